@@ -114,7 +114,7 @@ public class DemoActivity extends ActionBarActivity implements View.OnClickListe
                 .setDetailText(R.string.spotlightOneShotDetail)
                 .add();
         findViewById(R.id.repeatButton).setOnClickListener(this);
-        script.show();
+        script.showDeferred();
     }
 
     public void setOrientation(int orientation) {
@@ -149,6 +149,18 @@ public class DemoActivity extends ActionBarActivity implements View.OnClickListe
         setOrientation(newConfig.orientation);
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        script.destroy();
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        script.onLowMemory();
+    }
+
     void openAboutPopup () {
         final Dialog aboutPopup = new Dialog(this);
         View aboutWindowView = getLayoutInflater().inflate(R.layout.about, null);
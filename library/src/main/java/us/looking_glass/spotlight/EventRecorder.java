@@ -0,0 +1,255 @@
+/**
+ Copyright 2013 Andrew Mahone
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package us.looking_glass.spotlight;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Records how long each scene was shown and how it was dismissed. record() only
+// copies a few primitives into a preallocated ring buffer, so it adds nothing
+// measurable to the tap path; a background thread appends the records to a
+// private file, from which export() reads them back in batches.
+public class EventRecorder {
+    private final static String TAG = EventRecorder.class.getSimpleName();
+    final static boolean debug = false;
+
+    public static final int DISMISS_NEXT = 0;
+    public static final int DISMISS_ADVANCED = 1;
+    public static final int DISMISS_HIDDEN = 2;
+    public static final int DISMISS_BACK = 3;
+    public static final int DISMISS_JUMP = 4;
+
+    private static final int CAPACITY = 64;
+    private static final String FILE_NAME = "spotlight_events";
+
+    private final Context context;
+    private final int[] sceneIndex = new int[CAPACITY];
+    private final int[] oneShotID = new int[CAPACITY];
+    private final long[] shownAt = new long[CAPACITY];
+    private final long[] duration = new long[CAPACITY];
+    private final int[] reason = new int[CAPACITY];
+    private int head = 0;
+    private int count = 0;
+    private int dropped = 0;
+    private boolean flushPosted = false;
+
+    // Every recorder appends to the same file, so they share one lock and one
+    // writer thread. The first recorder starts the thread, and it is kept, so
+    // no write waits for a thread to start.
+    private static final Object fileLock = new Object();
+    private static Handler writer = null;
+    private final int[] flushSceneIndex = new int[CAPACITY];
+    private final int[] flushOneShotID = new int[CAPACITY];
+    private final long[] flushShownAt = new long[CAPACITY];
+    private final long[] flushDuration = new long[CAPACITY];
+    private final int[] flushReason = new int[CAPACITY];
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flushNow();
+        }
+    };
+
+    public EventRecorder(Context context) {
+        this.context = context.getApplicationContext();
+        // Starts the writer now rather than on the first record().
+        getWriter();
+    }
+
+    public static class Event {
+        public final int sceneIndex;
+        public final int oneShotID;
+        public final long shownAt;
+        public final long duration;
+        public final int reason;
+
+        Event(int sceneIndex, int oneShotID, long shownAt, long duration, int reason) {
+            this.sceneIndex = sceneIndex;
+            this.oneShotID = oneShotID;
+            this.shownAt = shownAt;
+            this.duration = duration;
+            this.reason = reason;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Event{scene=%d oneShot=%d shownAt=%d duration=%d reason=%d}",
+                    sceneIndex, oneShotID, shownAt, duration, reason);
+        }
+    }
+
+    // shownAt is wall clock time in milliseconds, duration in milliseconds.
+    public void record(int sceneIndex, int oneShotID, long shownAt, long duration, int reason) {
+        boolean post;
+        synchronized (this) {
+            if (count == CAPACITY) {
+                dropped++;
+                return;
+            }
+            int i = (head + count) % CAPACITY;
+            this.sceneIndex[i] = sceneIndex;
+            this.oneShotID[i] = oneShotID;
+            this.shownAt[i] = shownAt;
+            this.duration[i] = duration;
+            this.reason[i] = reason;
+            count++;
+            post = count >= CAPACITY / 2 && !flushPosted;
+            if (post)
+                flushPosted = true;
+        }
+        if (post)
+            postWrite(flushRunnable);
+    }
+
+    // Schedules a background write of all buffered events.
+    public void flush() {
+        synchronized (this) {
+            if (count == 0 || flushPosted)
+                return;
+            flushPosted = true;
+        }
+        postWrite(flushRunnable);
+    }
+
+    public synchronized int getDroppedCount() {
+        return dropped;
+    }
+
+    // Returns every recorded event, including ones not yet flushed, optionally
+    // removing them. Reads a file, so call it off the UI thread.
+    public List<Event> export(boolean clear) {
+        List<Event> result = new ArrayList<Event>();
+        synchronized (fileLock) {
+            flushNow();
+            File file = getFile();
+            if (file.exists()) {
+                DataInputStream in = null;
+                try {
+                    in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                    while (true) {
+                        int index;
+                        try {
+                            index = in.readInt();
+                        } catch (EOFException e) {
+                            break;
+                        }
+                        result.add(new Event(index, in.readInt(), in.readLong(), in.readLong(), in.readInt()));
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to read events", e);
+                } finally {
+                    close(in);
+                }
+                if (clear && !file.delete())
+                    Log.w(TAG, "Failed to delete " + file);
+            }
+        }
+        return result;
+    }
+
+    // Lock order is fileLock, then this; record() only ever takes this, and
+    // never waits on the file.
+    private void flushNow() {
+        synchronized (fileLock) {
+            int n;
+            synchronized (this) {
+                flushPosted = false;
+                n = count;
+                for (int j = 0; j < n; j++) {
+                    int i = (head + j) % CAPACITY;
+                    flushSceneIndex[j] = sceneIndex[i];
+                    flushOneShotID[j] = oneShotID[i];
+                    flushShownAt[j] = shownAt[i];
+                    flushDuration[j] = duration[i];
+                    flushReason[j] = reason[i];
+                }
+                head = (head + n) % CAPACITY;
+                count = 0;
+            }
+            if (n == 0)
+                return;
+            DataOutputStream out = null;
+            try {
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(getFile(), true)));
+                for (int j = 0; j < n; j++) {
+                    out.writeInt(flushSceneIndex[j]);
+                    out.writeInt(flushOneShotID[j]);
+                    out.writeLong(flushShownAt[j]);
+                    out.writeLong(flushDuration[j]);
+                    out.writeInt(flushReason[j]);
+                }
+                Logv("flushed %d events", n);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to write events", e);
+            } finally {
+                close(out);
+            }
+        }
+    }
+
+    private File getFile() {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    private static void postWrite(Runnable write) {
+        getWriter().post(write);
+    }
+
+    private static synchronized Handler getWriter() {
+        if (writer == null) {
+            HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            writer = new Handler(thread.getLooper());
+        }
+        return writer;
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable == null)
+            return;
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to close", e);
+        }
+    }
+
+    private static final void Logv(String text, Object... args) {
+        if (debug) {
+            if (args != null && args.length > 0)
+                text = String.format(text, args);
+            Log.v(TAG, text);
+        }
+    }
+}
@@ -0,0 +1,347 @@
+/**
+ Copyright 2013 Andrew Mahone
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package us.looking_glass.spotlight;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+
+import us.looking_glass.spotlight.draw.Spotlight;
+
+// Paints a whole scene with the default layouts (the scrim with its spotlight
+// hole, a ring spotlight, title and detail text, and the button) onto one
+// Canvas, from cached StaticLayouts, so nothing is inflated and there are no
+// child views to measure. The hole is left out of the scrim path rather than
+// cleared with DST_OUT, so no offscreen layer is needed either. Matches the
+// look of default_spotlight, default_label and default_button.
+final class FlatRenderer implements LabelPlacer.Label {
+    private static final CharSequence DEFAULT_BUTTON_TEXT = "Ok";
+    private static final int BUTTON_COLOR = 0xff33b5e5;
+    private static final int BUTTON_PRESSED_COLOR = 0xff0099cc;
+    private static final int[] TEXT_APPEARANCE = { android.R.attr.textSize, android.R.attr.textColor };
+
+    private final TextPaint titlePaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final TextPaint detailPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final TextPaint buttonTextPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint scrimPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint ringPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint buttonPaint = new Paint();
+    private final Path scrimPath = new Path();
+    private final RectF shapeBounds = new RectF();
+    private final float border;
+    private final float cornerRadius;
+    private final float pulseScale;
+    private final int margin;
+    private final int labelPadding;
+    private final int buttonPaddingX;
+    private final int buttonPaddingY;
+
+    private CharSequence title = null;
+    private CharSequence detail = null;
+    private CharSequence buttonText = DEFAULT_BUTTON_TEXT;
+    private float titleDesiredWidth = -1;
+    private float detailDesiredWidth = -1;
+    private StaticLayout titleLayout = null;
+    private StaticLayout detailLayout = null;
+    private StaticLayout buttonLayout = null;
+    private int measuredWidth = 0;
+    private int measuredHeight = 0;
+    private boolean buttonPressed = false;
+
+    private int shape = Spotlight.CIRCLE;
+    private float centerX = 0;
+    private float centerY = 0;
+    private float halfWidth = 0;
+    private float halfHeight = 0;
+    private boolean hasSpotlight = false;
+    private float spotlightScale = 1;
+
+    private int width = 0;
+    private int height = 0;
+    private final Rect stageRect = new Rect();
+    private final Rect spotlightRect = new Rect();
+    private final Rect buttonRect = new Rect();
+    private final Rect buttonBounds = new Rect();
+    private final Rect labelMargins = new Rect();
+    private final Rect labelRect = new Rect();
+
+    FlatRenderer(Context context) {
+        float density = context.getResources().getDisplayMetrics().density;
+        TypedArray styled = context.obtainStyledAttributes(null, R.styleable.Spotlight, 0, R.style.Spotlight);
+        ringPaint.setColor(styled.getColor(R.styleable.Spotlight_spotlightColor, 0xff33b5e5));
+        border = styled.getDimension(R.styleable.Spotlight_spotlightBorderWidth, 2 * density);
+        cornerRadius = styled.getDimension(R.styleable.Spotlight_spotlightCornerRadius, 8 * density);
+        pulseScale = styled.getFloat(R.styleable.Spotlight_spotlightPulseScale, 0);
+        styled.recycle();
+        ringPaint.setStyle(Paint.Style.STROKE);
+        ringPaint.setStrokeWidth(border);
+        scrimPath.setFillType(Path.FillType.EVEN_ODD);
+        initTextPaint(context, titlePaint, R.style.TextAppearance_Stage_DefaultTitle);
+        initTextPaint(context, detailPaint, R.style.TextAppearance_Stage_DefaultDetail);
+        initTextPaint(context, buttonTextPaint, android.R.style.TextAppearance_Widget_Button);
+        buttonPaint.setColor(BUTTON_COLOR);
+        margin = Math.round(4 * density);
+        labelPadding = Math.round(2 * density);
+        buttonPaddingX = Math.round(6 * density);
+        buttonPaddingY = Math.round(4 * density);
+        labelMargins.set(margin, margin, margin, margin);
+        setText(null, null, null);
+    }
+
+    private static void initTextPaint(Context context, TextPaint paint, int style) {
+        TypedArray styled = context.obtainStyledAttributes(style, TEXT_APPEARANCE);
+        paint.setTextSize(styled.getDimension(0, 15 * context.getResources().getDisplayMetrics().scaledDensity));
+        paint.setColor(styled.getColor(1, 0xffffffff));
+        styled.recycle();
+        paint.setShadowLayer(2, 0, 0, 0xff000000);
+    }
+
+    void setScrimColor(int color) {
+        scrimPaint.setColor(color);
+    }
+
+    float getBorder() {
+        return border;
+    }
+
+    // Returns true if any of the text changed.
+    boolean setText(CharSequence title, CharSequence detail, CharSequence buttonText) {
+        boolean changed = false;
+        if (buttonText == null)
+            buttonText = DEFAULT_BUTTON_TEXT;
+        if (!Stage.isSameText(title, this.title)) {
+            this.title = title;
+            titleDesiredWidth = title == null ? 0 : Layout.getDesiredWidth(title, titlePaint);
+            titleLayout = null;
+            changed = true;
+        }
+        if (!Stage.isSameText(detail, this.detail)) {
+            this.detail = detail;
+            detailDesiredWidth = detail == null ? 0 : Layout.getDesiredWidth(detail, detailPaint);
+            detailLayout = null;
+            changed = true;
+        }
+        if (Stage.isSameText(buttonText, this.buttonText) && buttonLayout != null)
+            return changed;
+        this.buttonText = buttonText;
+        int buttonWidth = (int) Math.ceil(Layout.getDesiredWidth(buttonText, buttonTextPaint));
+        buttonLayout = new StaticLayout(buttonText, buttonTextPaint, buttonWidth, Layout.Alignment.ALIGN_NORMAL, 1, 0, false);
+        return true;
+    }
+
+    boolean hasLabel() {
+        return title != null || detail != null;
+    }
+
+    void setSpotlight(int shape, float centerX, float centerY, float halfWidth, float halfHeight) {
+        this.shape = shape;
+        this.centerX = centerX;
+        this.centerY = centerY;
+        this.halfWidth = halfWidth;
+        this.halfHeight = halfHeight;
+        hasSpotlight = true;
+    }
+
+    void clearSpotlight() {
+        hasSpotlight = false;
+    }
+
+    boolean hasSpotlight() {
+        return hasSpotlight;
+    }
+
+    float getPulseScale() {
+        return pulseScale;
+    }
+
+    // Grows the hole and ring about their center at draw time, without a new
+    // layout, for a pulse driven by the caller.
+    void setSpotlightScale(float spotlightScale) {
+        this.spotlightScale = spotlightScale;
+    }
+
+    // Lays the scene out in a width x height stage: the button in the bottom
+    // right corner, then the label where placer puts it.
+    void layout(LabelPlacer placer, int width, int height, int visibleTop) {
+        this.width = width;
+        this.height = height;
+        int buttonWidth = buttonLayout.getWidth() + buttonPaddingX * 2;
+        int buttonHeight = buttonLayout.getHeight() + buttonPaddingY * 2;
+        buttonRect.set(width - buttonWidth - margin * 2, height - buttonHeight - margin * 2, width, height);
+        buttonBounds.set(buttonRect.left + margin, buttonRect.top + margin, buttonRect.right - margin, buttonRect.bottom - margin);
+        stageRect.set(0, 0, width, height);
+        if (hasSpotlight) {
+            int outerHalfWidth = (int) Math.ceil(halfWidth + border) + margin;
+            int outerHalfHeight = (int) Math.ceil(halfHeight + border) + margin;
+            spotlightRect.set((int) centerX - outerHalfWidth, (int) centerY - outerHalfHeight,
+                    (int) centerX + outerHalfWidth, (int) centerY + outerHalfHeight);
+        } else
+            spotlightRect.setEmpty();
+        if (hasLabel())
+            placer.place(this, stageRect, visibleTop, spotlightRect, buttonRect, labelMargins, labelRect);
+        else
+            labelRect.setEmpty();
+    }
+
+    boolean hitButton(float x, float y) {
+        return buttonBounds.contains((int) x, (int) y);
+    }
+
+    // Returns true if the pressed state changed, and the button needs redrawing.
+    boolean setButtonPressed(boolean pressed) {
+        if (pressed == buttonPressed)
+            return false;
+        buttonPressed = pressed;
+        buttonPaint.setColor(pressed ? BUTTON_PRESSED_COLOR : BUTTON_COLOR);
+        return true;
+    }
+
+    Rect getButtonBounds() {
+        return buttonBounds;
+    }
+
+    void draw(Canvas canvas) {
+        scrimPath.rewind();
+        scrimPath.addRect(0, 0, width, height, Path.Direction.CW);
+        if (hasSpotlight)
+            addShape(scrimPath, 0);
+        canvas.drawPath(scrimPath, scrimPaint);
+        if (hasSpotlight && border > 0)
+            drawRing(canvas);
+
+        if (!labelRect.isEmpty()) {
+            canvas.save();
+            canvas.clipRect(labelRect);
+            canvas.translate(labelRect.left + labelPadding, labelRect.top + labelPadding);
+            if (titleLayout != null) {
+                titleLayout.draw(canvas);
+                canvas.translate(0, titleLayout.getHeight());
+            }
+            if (detailLayout != null)
+                detailLayout.draw(canvas);
+            canvas.restore();
+        }
+
+        canvas.drawRect(buttonBounds, buttonPaint);
+        canvas.save();
+        canvas.translate(buttonBounds.left + buttonPaddingX, buttonBounds.top + buttonPaddingY);
+        buttonLayout.draw(canvas);
+        canvas.restore();
+    }
+
+    private void addShape(Path path, float outset) {
+        float halfWidth = this.halfWidth * spotlightScale;
+        float halfHeight = this.halfHeight * spotlightScale;
+        switch (shape) {
+            case Spotlight.CIRCLE:
+                path.addCircle(centerX, centerY, Math.max(halfWidth, halfHeight) + outset, Path.Direction.CW);
+                break;
+            case Spotlight.OVAL:
+                shapeBounds.set(centerX - halfWidth - outset, centerY - halfHeight - outset, centerX + halfWidth + outset, centerY + halfHeight + outset);
+                path.addOval(shapeBounds, Path.Direction.CW);
+                break;
+            case Spotlight.ROUNDED_RECT:
+                shapeBounds.set(centerX - halfWidth - outset, centerY - halfHeight - outset, centerX + halfWidth + outset, centerY + halfHeight + outset);
+                path.addRoundRect(shapeBounds, cornerRadius + outset, cornerRadius + outset, Path.Direction.CW);
+                break;
+        }
+    }
+
+    private void drawRing(Canvas canvas) {
+        float outset = border / 2;
+        float halfWidth = this.halfWidth * spotlightScale;
+        float halfHeight = this.halfHeight * spotlightScale;
+        switch (shape) {
+            case Spotlight.CIRCLE:
+                canvas.drawCircle(centerX, centerY, Math.max(halfWidth, halfHeight) + outset, ringPaint);
+                break;
+            case Spotlight.OVAL:
+                shapeBounds.set(centerX - halfWidth - outset, centerY - halfHeight - outset, centerX + halfWidth + outset, centerY + halfHeight + outset);
+                canvas.drawOval(shapeBounds, ringPaint);
+                break;
+            case Spotlight.ROUNDED_RECT:
+                shapeBounds.set(centerX - halfWidth - outset, centerY - halfHeight - outset, centerX + halfWidth + outset, centerY + halfHeight + outset);
+                canvas.drawRoundRect(shapeBounds, cornerRadius + outset, cornerRadius + outset, ringPaint);
+                break;
+        }
+    }
+
+    // Text is laid out no wider than it needs to be, so every width at least
+    // that wide shares one cached layout.
+    private static StaticLayout layoutText(StaticLayout layout, CharSequence text, TextPaint paint, float desiredWidth, int maxWidth) {
+        if (text == null)
+            return null;
+        int width = Math.max(1, Math.min(maxWidth, (int) Math.ceil(desiredWidth)));
+        if (layout != null && layout.getWidth() == width)
+            return layout;
+        return new StaticLayout(text, paint, width, Layout.Alignment.ALIGN_NORMAL, 1, 0, false);
+    }
+
+    private static int getTextWidth(StaticLayout layout) {
+        if (layout == null)
+            return 0;
+        float result = 0;
+        for (int i = 0; i < layout.getLineCount(); i++)
+            result = Math.max(result, layout.getLineWidth(i));
+        return (int) Math.ceil(result);
+    }
+
+    // The placer's first measurement in a stage this wide, made ahead of time.
+    void premeasure(int stageWidth) {
+        measure(stageWidth - labelMargins.left - labelMargins.right);
+    }
+
+    @Override
+    public int measure(int maxWidth) {
+        int textWidth = maxWidth - labelPadding * 2;
+        if (textWidth < 1)
+            return Integer.MAX_VALUE;
+        titleLayout = layoutText(titleLayout, title, titlePaint, titleDesiredWidth, textWidth);
+        detailLayout = layoutText(detailLayout, detail, detailPaint, detailDesiredWidth, textWidth);
+        measuredWidth = Math.max(getTextWidth(titleLayout), getTextWidth(detailLayout)) + labelPadding * 2;
+        measuredHeight = labelPadding * 2;
+        if (titleLayout != null)
+            measuredHeight += titleLayout.getHeight();
+        if (detailLayout != null)
+            measuredHeight += detailLayout.getHeight();
+        return measuredHeight;
+    }
+
+    @Override
+    public void measureWithin(int width, int height) {
+        measure(Math.max(width, labelPadding * 2 + 1));
+        measuredWidth = Math.min(measuredWidth, Math.max(width, 0));
+        measuredHeight = Math.min(measuredHeight, Math.max(height, 0));
+    }
+
+    @Override
+    public int getMeasuredWidth() {
+        return measuredWidth;
+    }
+
+    @Override
+    public int getMeasuredHeight() {
+        return measuredHeight;
+    }
+}
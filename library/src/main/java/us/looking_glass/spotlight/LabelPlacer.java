@@ -0,0 +1,43 @@
+/**
+ Copyright 2013 Andrew Mahone
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package us.looking_glass.spotlight;
+
+import android.graphics.Rect;
+
+// Chooses where a Stage puts its label, given the space left around the
+// spotlight and button. Set a custom one with Stage.setLabelPlacer().
+public interface LabelPlacer {
+    interface Label {
+        // Measures the label at most maxWidth wide with unbounded height, and
+        // returns the measured height, or Integer.MAX_VALUE if maxWidth < 1.
+        int measure(int maxWidth);
+
+        // Measures the label to fit within width x height.
+        void measureWithin(int width, int height);
+
+        int getMeasuredWidth();
+
+        int getMeasuredHeight();
+    }
+
+    // stage is the full stage area and visibleTop the first row below the status
+    // and action bars. spotlight and button include their margins; spotlight is
+    // empty when the scene has no actor. margins holds the label's margins in
+    // each side. Sets out to the label's layout rectangle, leaving the label
+    // measured to match it.
+    void place(Label label, Rect stage, int visibleTop, Rect spotlight, Rect button, Rect margins, Rect out);
+}
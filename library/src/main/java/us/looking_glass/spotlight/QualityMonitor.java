@@ -0,0 +1,238 @@
+/**
+ Copyright 2013 Andrew Mahone
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package us.looking_glass.spotlight;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.app.ActivityManager;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.os.Build;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.provider.Settings;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.lang.reflect.Method;
+
+// Picks the quality level a Script's tour runs at. Each transition's frames
+// are timed as the overlay draws them: a transition that misses too many
+// frames drops the level by one, and a few smooth ones in a row raise it
+// again. Device signals set a floor under that: a low RAM device or power
+// save mode allow no more than QUALITY_REDUCED, and animations turned off in
+// the developer settings mean QUALITY_MINIMAL. The signals are read again as
+// each scene is shown, so the tour recovers when they clear.
+final class QualityMonitor implements ViewTreeObserver.OnPreDrawListener {
+    private final static String TAG = QualityMonitor.class.getSimpleName();
+    final static boolean debug = false;
+    // A frame is late if it took this many frame intervals or more.
+    private static final float LATE_FRAME = 1.5f;
+    // Share of late frames above which a transition counts as janky.
+    private static final float JANK_RATIO = 0.25f;
+    // Transitions with fewer frames than this say too little to judge.
+    private static final int MIN_FRAMES = 4;
+    // Smooth transitions, or scenes shown at QUALITY_MINIMAL, before the level
+    // is raised again.
+    private static final int RECOVER_AFTER = 3;
+    private static final int LOW_MEMORY_CLASS = 32;
+    private static Method isPowerSaveMode = null;
+    private static boolean isPowerSaveModeResolved = false;
+
+    private final ContentResolver contentResolver;
+    private final PowerManager powerManager;
+    private final boolean lowMemory;
+    private final float frameInterval;
+    private int dynamicLevel = Script.QUALITY_FULL;
+    private int floorLevel = Script.QUALITY_FULL;
+    private int recoverCount = 0;
+    private View watchedView = null;
+    private long lastFrameUptime = -1;
+    private int frames = 0;
+    private int lateFrames = 0;
+
+    QualityMonitor(Activity activity) {
+        Context context = activity.getApplicationContext();
+        contentResolver = context.getContentResolver();
+        powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        lowMemory = activityManager.getMemoryClass() <= LOW_MEMORY_CLASS ||
+                (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && isLowRamDevice(activityManager));
+        float refreshRate = activity.getWindowManager().getDefaultDisplay().getRefreshRate();
+        if (refreshRate < 10)
+            refreshRate = 60;
+        frameInterval = 1000 / refreshRate;
+    }
+
+    int getLevel() {
+        return Math.max(dynamicLevel, floorLevel);
+    }
+
+    // Reads the device signals again; called as each scene is shown.
+    void update() {
+        int floor = Script.QUALITY_FULL;
+        if (lowMemory || isPowerSaveMode())
+            floor = Script.QUALITY_REDUCED;
+        if (getAnimatorDurationScale() == 0)
+            floor = Script.QUALITY_MINIMAL;
+        if (floor != floorLevel)
+            Logd("quality floor %d", floor);
+        floorLevel = floor;
+        // Scenes shown without a transition can't be timed, so after a few the
+        // next level up is tried again.
+        if (dynamicLevel == Script.QUALITY_MINIMAL && ++recoverCount >= RECOVER_AFTER) {
+            dynamicLevel = Script.QUALITY_REDUCED;
+            recoverCount = 0;
+            Logd("quality raised to %d", dynamicLevel);
+        }
+    }
+
+    int adjustTransition(int transition) {
+        return getLevel() >= Script.QUALITY_MINIMAL ? Script.NONE : transition;
+    }
+
+    int adjustAnimTime(int animTime) {
+        return getLevel() >= Script.QUALITY_REDUCED ? animTime / 2 : animTime;
+    }
+
+    boolean useLayers() {
+        return getLevel() < Script.QUALITY_REDUCED;
+    }
+
+    boolean usePulse() {
+        return getLevel() < Script.QUALITY_REDUCED;
+    }
+
+    // Times the frames view draws until endTransition().
+    void startTransition(View view) {
+        stopWatching();
+        watchedView = view;
+        lastFrameUptime = -1;
+        frames = 0;
+        lateFrames = 0;
+        view.getViewTreeObserver().addOnPreDrawListener(this);
+    }
+
+    void endTransition() {
+        if (watchedView == null)
+            return;
+        stopWatching();
+        if (frames < MIN_FRAMES)
+            return;
+        Logv("transition: %d of %d frames late", lateFrames, frames);
+        if (lateFrames > frames * JANK_RATIO) {
+            recoverCount = 0;
+            if (dynamicLevel < Script.QUALITY_MINIMAL) {
+                dynamicLevel++;
+                Logd("quality lowered to %d", dynamicLevel);
+            }
+        } else if (dynamicLevel > Script.QUALITY_FULL && ++recoverCount >= RECOVER_AFTER) {
+            recoverCount = 0;
+            dynamicLevel--;
+            Logd("quality raised to %d", dynamicLevel);
+        }
+    }
+
+    // Stops timing without judging the transition, e.g. when the tour is hidden.
+    void cancelTransition() {
+        stopWatching();
+    }
+
+    @Override
+    public boolean onPreDraw() {
+        long now = SystemClock.uptimeMillis();
+        if (lastFrameUptime >= 0) {
+            frames++;
+            if (now - lastFrameUptime >= frameInterval * LATE_FRAME)
+                lateFrames++;
+        }
+        lastFrameUptime = now;
+        return true;
+    }
+
+    private void stopWatching() {
+        if (watchedView == null)
+            return;
+        ViewTreeObserver observer = watchedView.getViewTreeObserver();
+        if (observer.isAlive())
+            observer.removeOnPreDrawListener(this);
+        watchedView = null;
+    }
+
+    private float getAnimatorDurationScale() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1)
+            return getGlobalAnimatorDurationScale();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+            return getSystemAnimatorDurationScale();
+        return 1;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+    private float getGlobalAnimatorDurationScale() {
+        return Settings.Global.getFloat(contentResolver, Settings.Global.ANIMATOR_DURATION_SCALE, 1);
+    }
+
+    @SuppressWarnings("deprecation")
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private float getSystemAnimatorDurationScale() {
+        return Settings.System.getFloat(contentResolver, Settings.System.ANIMATOR_DURATION_SCALE, 1);
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static boolean isLowRamDevice(ActivityManager activityManager) {
+        return activityManager.isLowRamDevice();
+    }
+
+    // PowerManager.isPowerSaveMode() arrived in API 21, after the SDK this
+    // library builds against, so it is looked up at run time.
+    private boolean isPowerSaveMode() {
+        if (!isPowerSaveModeResolved) {
+            isPowerSaveModeResolved = true;
+            if (Build.VERSION.SDK_INT >= 21) {
+                try {
+                    isPowerSaveMode = PowerManager.class.getMethod("isPowerSaveMode");
+                } catch (NoSuchMethodException e) {
+                    Log.w(TAG, "isPowerSaveMode not found");
+                }
+            }
+        }
+        if (isPowerSaveMode == null || powerManager == null)
+            return false;
+        try {
+            return (Boolean) isPowerSaveMode.invoke(powerManager);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static final void Logd(String text, Object... args) {
+        if (debug) {
+            if (args != null && args.length > 0)
+                text = String.format(text, args);
+            Log.d(TAG, text);
+        }
+    }
+
+    private static final void Logv(String text, Object... args) {
+        if (debug) {
+            if (args != null && args.length > 0)
+                text = String.format(text, args);
+            Log.v(TAG, text);
+        }
+    }
+}
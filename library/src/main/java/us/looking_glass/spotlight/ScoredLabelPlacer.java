@@ -0,0 +1,172 @@
+/**
+ Copyright 2013 Andrew Mahone
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package us.looking_glass.spotlight;
+
+import android.graphics.Rect;
+import android.util.Log;
+
+// Default LabelPlacer. Builds every candidate region around the spotlight and
+// button in one pass, estimates from a single full-width measurement whether
+// the label fits each one, and scores them by fit, distance from the spotlight
+// and overlap with the spotlight and button. Candidates are then measured best
+// first, and only until one fits; a candidate at least as wide as the label's
+// natural width needs no measurement at all.
+public class ScoredLabelPlacer implements LabelPlacer {
+    private final static String TAG = ScoredLabelPlacer.class.getSimpleName();
+    final static boolean debug = false;
+
+    private static final int ABOVE = 0;
+    private static final int BELOW = 1;
+    private static final int LEFT = 2;
+    private static final int RIGHT = 3;
+    private static final int LEFT_OF_BUTTON = 4;
+    private static final int CANDIDATES = 5;
+    private static final int MAX_MEASURES = 3;
+    private static final float OVERLAP_WEIGHT = 4;
+    private static final float MISFIT_PENALTY = 1e9f;
+
+    private final Rect[] regions = new Rect[CANDIDATES];
+    private final float[] scores = new float[CANDIDATES];
+    private final boolean[] fits = new boolean[CANDIDATES];
+    private final int[] order = new int[CANDIDATES];
+    private final Rect placed = new Rect();
+    private final Rect spot = new Rect();
+
+    public ScoredLabelPlacer() {
+        for (int i = 0; i < CANDIDATES; i++)
+            regions[i] = new Rect();
+    }
+
+    @Override
+    public void place(Label label, Rect stage, int visibleTop, Rect spotlight, Rect button, Rect margins, Rect out) {
+        int width = stage.width();
+        int height = stage.height();
+        boolean hasSpotlight = !spotlight.isEmpty();
+        if (hasSpotlight)
+            spot.set(spotlight);
+        else
+            spot.set(width, height, width, height);
+        int horizontalMargins = margins.left + margins.right;
+        int verticalMargins = margins.top + margins.bottom;
+
+        regions[ABOVE].set(0, visibleTop, width, Math.min(spot.top, button.top));
+        regions[BELOW].set(0, spot.bottom, width, button.top > spot.bottom ? button.top : height);
+        regions[LEFT].set(0, visibleTop, spot.left, button.left < spot.left ? button.top : height);
+        regions[RIGHT].set(spot.right, visibleTop, width, button.right > spot.right ? button.top : height);
+        regions[LEFT_OF_BUTTON].set(0, spot.bottom < button.top ? spot.bottom : visibleTop, button.left, height);
+
+        // Every candidate is at most this wide, so this one measurement bounds them all.
+        int fullAvailable = width - horizontalMargins;
+        int naturalHeight = label.measure(fullAvailable);
+        int naturalWidth = label.getMeasuredWidth();
+        int measuredAt = fullAvailable;
+        Logv("natural size: %dx%d", naturalWidth, naturalHeight);
+
+        for (int i = 0; i < CANDIDATES; i++) {
+            Rect region = regions[i];
+            int available = region.width() - horizontalMargins;
+            int availableHeight = region.height() - verticalMargins;
+            order[i] = i;
+            if (available < 1 || availableHeight < 1 || naturalHeight == Integer.MAX_VALUE) {
+                fits[i] = false;
+                scores[i] = Float.MAX_VALUE;
+                continue;
+            }
+            int estimatedWidth = Math.min(naturalWidth, available);
+            int estimatedHeight = available >= naturalWidth ? naturalHeight :
+                    (int) Math.ceil((double) naturalHeight * naturalWidth / available);
+            fits[i] = estimatedHeight <= availableHeight;
+            placed.set(region.left + margins.left, region.top + margins.top,
+                    region.left + margins.left + estimatedWidth, region.top + margins.top + Math.min(estimatedHeight, availableHeight));
+            float score = fits[i] ? 0 : MISFIT_PENALTY;
+            if (hasSpotlight)
+                score += distance(placed, spot.centerX(), spot.centerY());
+            score += OVERLAP_WEIGHT * (overlap(placed, spot) + overlap(placed, button));
+            // Keeps the historical order among otherwise equal candidates.
+            scores[i] = score + i;
+        }
+        for (int i = 1; i < CANDIDATES; i++) {
+            int candidate = order[i];
+            int j = i - 1;
+            while (j >= 0 && scores[order[j]] > scores[candidate]) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = candidate;
+        }
+
+        int measures = 0;
+        for (int i = 0; i < CANDIDATES; i++) {
+            int candidate = order[i];
+            if (scores[candidate] == Float.MAX_VALUE)
+                break;
+            Rect region = regions[candidate];
+            int available = region.width() - horizontalMargins;
+            int availableHeight = region.height() - verticalMargins;
+            int labelHeight;
+            if (available >= naturalWidth) {
+                if (naturalHeight > availableHeight)
+                    continue;
+                if (measuredAt != fullAvailable) {
+                    label.measure(fullAvailable);
+                    measuredAt = fullAvailable;
+                }
+                labelHeight = naturalHeight;
+            } else {
+                if (measures >= MAX_MEASURES)
+                    continue;
+                measures++;
+                labelHeight = label.measure(available);
+                measuredAt = available;
+                if (labelHeight > availableHeight) {
+                    Logv("candidate %d: not enough space: %d > %d", candidate, labelHeight, availableHeight);
+                    continue;
+                }
+            }
+            Logv("placed label in candidate %d", candidate);
+            out.left = region.left + margins.left;
+            out.top = region.top + margins.top;
+            out.right = out.left + label.getMeasuredWidth();
+            out.bottom = out.top + labelHeight;
+            return;
+        }
+
+        Logv("label fit failed, using fallback fullscreen placement");
+        out.set(margins.left, visibleTop + margins.top, width - margins.right, height - margins.bottom);
+        label.measureWithin(out.width(), out.height());
+    }
+
+    private static float distance(Rect rect, int x, int y) {
+        int dx = x < rect.left ? rect.left - x : x > rect.right ? x - rect.right : 0;
+        int dy = y < rect.top ? rect.top - y : y > rect.bottom ? y - rect.bottom : 0;
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private static int overlap(Rect a, Rect b) {
+        int w = Math.min(a.right, b.right) - Math.max(a.left, b.left);
+        int h = Math.min(a.bottom, b.bottom) - Math.max(a.top, b.top);
+        return w > 0 && h > 0 ? w * h : 0;
+    }
+
+    private static final void Logv(String text, Object... args) {
+        if (debug) {
+            if (args != null && args.length > 0)
+                text = String.format(text, args);
+            Log.v(TAG, text);
+        }
+    }
+}
@@ -16,79 +16,405 @@
 
 package us.looking_glass.spotlight;
 
+import android.annotation.TargetApi;
 import android.app.Activity;
+import android.app.Application;
 import android.content.Context;
+import android.content.ComponentCallbacks2;
 import android.content.SharedPreferences;
+import android.content.res.Configuration;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
+import android.graphics.PixelFormat;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
 import android.os.Build;
+import android.os.Bundle;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.FrameLayout;
-
-import com.nineoldandroids.animation.Animator;
-import com.nineoldandroids.animation.AnimatorSet;
-import com.nineoldandroids.animation.ObjectAnimator;
-import com.nineoldandroids.view.ViewHelper;
+import android.view.ViewTreeObserver;
+import android.view.WindowManager;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import javax.crypto.spec.OAEPParameterSpec;
 
 import us.looking_glass.spotlight.actor.Actor;
-
-public class Script implements View.OnClickListener {
+import us.looking_glass.spotlight.draw.BitmapPool;
+import us.looking_glass.spotlight.image.ImageLoader;
+import us.looking_glass.spotlight.transition.FadeTransition;
+import us.looking_glass.spotlight.transition.PropertyTransition;
+import us.looking_glass.spotlight.transition.RevealTransition;
+import us.looking_glass.spotlight.transition.SlideTransition;
+import us.looking_glass.spotlight.transition.Transition;
+
+public class Script implements View.OnClickListener, Transition.Listener {
     private final static String TAG = Script.class.getSimpleName();
     final static boolean debug = true;
 
     private List<Scene> scenes = new ArrayList<Scene>();
-    private Iterator<Scene> sceneIterator = null;
-    private final Activity activity;
-    private FrameLayout frame = null;
+    private boolean showing = false;
+    private SparseIntArray sceneIDs = null;
+    private int[] history = new int[8];
+    private int historySize = 0;
+    private final WeakReference<Activity> activityRef;
+    private final Context appContext;
+    private Application application = null;
+    private Object lifecycleCallbacks = null;
+    private Object componentCallbacks = null;
+    private boolean frameAttached = false;
+    private StageFrame frame = null;
+    private int hostMode = HOST_DECOR;
+    private boolean flatRendering = false;
+    private boolean surfaceRendering = false;
+    private QualityMonitor quality = null;
+    private boolean frameInWindow = false;
+    private boolean frameLayered = false;
+    private WindowManager windowManager = null;
     private Scene scene = null;
+    private int sceneIndex = -1;
+    private EventRecorder recorder = null;
+    private Scene shownScene = null;
+    private int shownSceneIndex = -1;
+    private long shownAt = 0;
+    private long shownUptime = 0;
+    private boolean clicked = false;
     private Stage stage = null;
     private Stage nextStage = null;
     private SharedPreferences sharedPreferences = null;
     private boolean showAll;
-    private boolean inCrossfade = false;
+    private final SparseArray<Transition> transitions = new SparseArray<Transition>();
+    private Transition runningTransition = null;
+    private int animationBackend = PropertyTransition.BACKEND_AUTO;
+    private boolean transitionSwap = false;
+    private boolean transitionEnd = false;
+    private boolean lookaheadQueued = false;
+    private int deferredState = DEFER_NONE;
+    private boolean deferredShowAll = false;
+    private View deferredView = null;
+    private final Runnable surfaceFadedOut = new Runnable() {
+        @Override
+        public void run() {
+            hide();
+        }
+    };
+    private final MessageQueue.IdleHandler lookahead = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            lookaheadQueued = false;
+            prepareNextScene();
+            return false;
+        }
+    };
 
     public static final  int NONE = 0;
     public static final int FADE = 1;
+    public static final int SLIDE = 2;
+    public static final int REVEAL = 3;
     public static final int EMPTY_SCENE = 1<<31;
+    public static final int HOST_DECOR = 0;
+    public static final int HOST_WINDOW = 1;
+    public static final int QUALITY_FULL = 0;
+    public static final int QUALITY_REDUCED = 1;
+    public static final int QUALITY_MINIMAL = 2;
+    private static final int DEFER_NONE = 0;
+    private static final int DEFER_FIRST_FRAME = 1;
+    private static final int DEFER_FULLY_DRAWN = 2;
+    private static final int DEFER_RUNNING = 3;
 
     public Script(Activity activity) {
-        this.activity = activity;
+        activityRef = new WeakReference<Activity>(activity);
+        appContext = activity.getApplicationContext();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            registerLifecycleCallbacks(activity);
+            registerComponentCallbacks();
+        }
+    }
+
+    // Shows scenes defined ahead of time, for instance by a SceneBuilder
+    // created with no Script.
+    public Script(Activity activity, List<Scene> scenes) {
+        this(activity);
+        this.scenes.addAll(scenes);
+    }
+
+    public Activity getActivity() {
+        return activityRef.get();
+    }
+
+    // Tears the tour down when its Activity is destroyed, so a tour left showing
+    // can't keep the Activity's view hierarchy alive. Before API 14 call destroy()
+    // from Activity.onDestroy().
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private void registerLifecycleCallbacks(Activity activity) {
+        Application.ActivityLifecycleCallbacks callbacks = new Application.ActivityLifecycleCallbacks() {
+            @Override
+            public void onActivityDestroyed(Activity activity) {
+                if (activity == getActivity() || getActivity() == null)
+                    destroy();
+            }
+
+            @Override
+            public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+            }
+
+            @Override
+            public void onActivityStarted(Activity activity) {
+            }
+
+            @Override
+            public void onActivityResumed(Activity activity) {
+            }
+
+            @Override
+            public void onActivityPaused(Activity activity) {
+            }
+
+            @Override
+            public void onActivityStopped(Activity activity) {
+            }
+
+            @Override
+            public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+            }
+        };
+        lifecycleCallbacks = callbacks;
+        application = activity.getApplication();
+        application.registerActivityLifecycleCallbacks(callbacks);
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private void unregisterLifecycleCallbacks() {
+        application.unregisterActivityLifecycleCallbacks(
+                (Application.ActivityLifecycleCallbacks) lifecycleCallbacks);
+        lifecycleCallbacks = null;
+    }
+
+    // Hides the tour, drops its retained overlay and stops observing the
+    // Activity. Called automatically when the Activity is destroyed on API 14
+    // and later.
+    public void destroy() {
+        Logv("destroy");
+        TipScheduler.getInstance().remove(this);
+        release();
+        if (lifecycleCallbacks != null)
+            unregisterLifecycleCallbacks();
+        if (componentCallbacks != null)
+            unregisterComponentCallbacks();
     }
 
     public Scene add(Scene scene) {
         scenes.add(scene);
+        sceneIDs = null;
         return scene;
     }
 
+    // Index of the scene with id, or -1 if there is none. The index is built
+    // the first time a scene is looked up by id.
+    private int indexOf(int id) {
+        if (sceneIDs == null) {
+            sceneIDs = new SparseIntArray(scenes.size());
+            for (int i = 0; i < scenes.size(); i++) {
+                int sceneID = scenes.get(i).id;
+                if (sceneID < 0)
+                    continue;
+                if (sceneIDs.indexOfKey(sceneID) >= 0)
+                    Log.w(TAG, String.format("duplicate scene id %d", sceneID));
+                else
+                    sceneIDs.put(sceneID, i);
+            }
+        }
+        return sceneIDs.get(id, -1);
+    }
+
+    // The index of the scene to show after the one at from: the target of the
+    // first of its branches whose condition holds, or else the scene after it,
+    // skipping scenes that are not to be displayed. scenes.size() if there are
+    // none left.
+    private int resolveNext(int from) {
+        int index = from + 1;
+        if (from >= 0) {
+            for (Branch branch : scenes.get(from).branches) {
+                if (branch.condition != null && !branch.condition.test(this))
+                    continue;
+                int target = indexOf(branch.target);
+                if (target >= 0) {
+                    index = target;
+                    break;
+                }
+                Log.w(TAG, String.format("branch to unknown scene id %d", branch.target));
+            }
+        }
+        for (; index < scenes.size(); index++) {
+            if (showAll || shouldDisplay(scenes.get(index)))
+                break;
+        }
+        return index;
+    }
+
     @Override
     public void onClick(View v) {
         Logv("onClick: %s", v);
-        scene.recordFired();
-        stage.getButton().setOnClickListener(null);
+        // Finishing the transition can end the tour, which clears scene and
+        // stage, so the tapped scene is read first.
+        Scene clickedScene = scene;
+        finishTransition();
+        if (clickedScene != null)
+            recordFired(clickedScene);
+        if (!isShowing())
+            return;
+        stage.setOnButtonClickListener(null);
+        clicked = true;
         nextScene();
     }
 
+    public EventRecorder getEventRecorder() {
+        return recorder;
+    }
+
+    public void setEventRecorder(EventRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    private void recordShown() {
+        shownScene = scene;
+        shownSceneIndex = sceneIndex;
+        if (recorder != null) {
+            shownAt = System.currentTimeMillis();
+            shownUptime = SystemClock.uptimeMillis();
+        }
+    }
+
+    private void recordDismissed(int reason) {
+        if (shownScene == null)
+            return;
+        if (recorder != null)
+            recorder.record(shownSceneIndex, shownScene.oneShotID, shownAt,
+                    SystemClock.uptimeMillis() - shownUptime, reason);
+        shownScene = null;
+    }
+
+    // Registers the transition used for scenes whose transition is id, replacing
+    // the built in one if id is FADE, SLIDE or REVEAL.
+    public void setTransition(int id, Transition transition) {
+        if (transition instanceof PropertyTransition)
+            ((PropertyTransition) transition).setBackend(animationBackend);
+        transitions.put(id, transition);
+    }
+
+    public int getAnimationBackend() {
+        return animationBackend;
+    }
+
+    // PropertyTransition.BACKEND_AUTO runs the built in transitions, and any
+    // registered PropertyTransition, on the platform ViewPropertyAnimator where
+    // available; BACKEND_COMPAT keeps them on nineoldandroids everywhere.
+    public void setAnimationBackend(int backend) {
+        animationBackend = backend;
+        for (int i = 0; i < transitions.size(); i++) {
+            Transition transition = transitions.valueAt(i);
+            if (transition instanceof PropertyTransition)
+                ((PropertyTransition) transition).setBackend(backend);
+        }
+    }
+
+    private Transition getTransition(int id) {
+        Transition result = transitions.get(id);
+        if (result == null) {
+            switch (id) {
+                case FADE:
+                    result = new FadeTransition();
+                    break;
+                case SLIDE:
+                    result = new SlideTransition();
+                    break;
+                case REVEAL:
+                    result = new RevealTransition();
+                    break;
+                default:
+                    Log.w(TAG, String.format("unknown transition %d, using fade", id));
+                    result = new FadeTransition();
+            }
+            if (result instanceof PropertyTransition)
+                ((PropertyTransition) result).setBackend(animationBackend);
+            transitions.put(id, result);
+        }
+        return result;
+    }
+
+    // Fast-forwards a running transition, so a scene change that arrives during
+    // one starts from a settled stage instead of stacking animations.
+    private void finishTransition() {
+        if (runningTransition != null)
+            runningTransition.finish();
+    }
+
     public void nextScene() {
-        final Scene prevScene = scene;
-        scene = null;
-        while (sceneIterator.hasNext()) {
-            scene = sceneIterator.next();
-            if (showAll || scene.shouldDisplay())
-                break;
-            scene = null;
+        finishTransition();
+        if (!isShowing())
+            return;
+        goTo(resolveNext(sceneIndex), clicked ? EventRecorder.DISMISS_NEXT : EventRecorder.DISMISS_ADVANCED, true);
+    }
+
+    // Shows the scene with id next, whatever scene is showing and whether or
+    // not it was already displayed. Returns false if the tour isn't showing or
+    // has no such scene.
+    public boolean jumpTo(int id) {
+        int index = indexOf(id);
+        if (!isShowing() || index < 0)
+            return false;
+        finishTransition();
+        goTo(index, EventRecorder.DISMISS_JUMP, true);
+        return true;
+    }
+
+    // Shows the scene displayed before the current one again. Returns false if
+    // there is none.
+    public boolean back() {
+        if (!isShowing() || historySize < 2)
+            return false;
+        finishTransition();
+        historySize--;
+        goTo(history[historySize - 1], EventRecorder.DISMISS_BACK, false);
+        return true;
+    }
+
+    public boolean canGoBack() {
+        return isShowing() && historySize >= 2;
+    }
+
+    // The id of the scene showing, or -1.
+    public int getCurrentSceneID() {
+        return scene == null ? -1 : scene.id;
+    }
+
+    // Moves the tour to the scene at index, ending it if that is past the last
+    // scene or an end marker; push adds the scene to the back stack.
+    private void goTo(int index, int dismissReason, boolean push) {
+        if (getActivity() == null) {
+            hide();
+            return;
         }
+        recordDismissed(dismissReason);
+        clicked = false;
+        final Scene prevScene = scene;
+        sceneIndex = index;
+        scene = index < scenes.size() ? scenes.get(index) : null;
+        if (push && scene != null && (scene.transition & EMPTY_SCENE) == 0)
+            pushHistory(index);
         int transition = NONE;
         boolean end = scene == null;
         if (!end) {
@@ -98,121 +424,378 @@ public class Script implements View.OnClickListener {
                 end = true;
             }
         }
-        if (!end)
+        if (quality != null) {
+            quality.update();
+            transition = quality.adjustTransition(transition);
+        }
+        if (!end) {
             setStage(false);
-        else if (stage == null) {
+            applyQuality();
+            recordShown();
+            prefetchNextImage();
+        } else if (stage == null) {
             hide();
             return;
         }
-        switch (transition) {
-            case NONE:
-                stage.show();
-                if (!end) {
-                    stage.setScene(scene);
-                    stage.getButton().setOnClickListener(this);
-                } else
-                    hide();
-                break;
-            case FADE:
-                AnimatorSet crossfade = new AnimatorSet();
-                if (!end) {
-                    if (prevScene != null) {
-                        Logv("crossfade scenes");
-                        setStage(true);
-                        crossfade.playTogether(ObjectAnimator.ofFloat(stage, "alpha", 1, 0), ObjectAnimator.ofFloat(nextStage, "alpha", 0, 1));
-                        frame.addView(nextStage);
-                        nextStage.show();
-                        nextStage.setScene(scene);
-                        ViewHelper.setAlpha(nextStage, 0);
-                        inCrossfade = true;
-                    } else {
-                        Logv("fade in first scene");
-                        setupStageBlending(stage);
-                        stage.show();
-                        stage.setScene(scene);
-                        ViewHelper.setAlpha(stage, 0);
-                        crossfade.play(ObjectAnimator.ofFloat(stage, "alpha", 0, 1));
-                    }
+        if (end ? stage.isSurfaceScene() : stage.canRenderOnSurface(scene)) {
+            showOnSurface(end, transition);
+            return;
+        }
+        if (transition == NONE) {
+            if (!end) {
+                if (nextStage != null && nextStage.isPreparedFor(scene)) {
+                    Logv("swap in prepared scene");
+                    stage.hide();
+                    frame.removeView(stage);
+                    addToFrame(nextStage);
+                    nextStage.show();
+                    Stage tmpStage = nextStage;
+                    nextStage = stage;
+                    stage = tmpStage;
                 } else {
-                    Logv("fade out final scene");
-                    crossfade.play(ObjectAnimator.ofFloat(stage, "alpha", 1, 0));
+                    stage.show();
+                    stage.setScene(scene);
                 }
-                crossfade.setDuration(scene.animTime);
-                crossfade.setStartDelay(0);
-                final boolean finalEnd = end;
-                crossfade.addListener(new Animator.AnimatorListener() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        Logv("animation complete");
-                        if (!finalEnd) {
-                            if (prevScene != null) {
-                                Logv("swap scenes");
-                                Stage tmpStage = nextStage;
-                                stage.hide();
-                                frame.removeView(stage);
-                                nextStage = stage;
-                                stage = tmpStage;
-                                inCrossfade = false;
-                            }
-                            Logv("%s %s", stage, stage != null ? stage.getButton() : null);
-                            Logv("%s %s", nextStage, nextStage == null ? null : nextStage.getVisibility());
-                            stage.getButton().setOnClickListener(Script.this);
-                        } else
-                            hide();
-                    }
-
-                    @Override
-                    public void onAnimationCancel(Animator animation) {
-                        onAnimationEnd(animation);
-                    }
-
-                    @Override
-                    public void onAnimationStart(Animator animation) {
-                        Logv("start animation");
-                    }
-                    @Override
-                    public void onAnimationRepeat(Animator animation) {
-                    }
-                });
-                crossfade.start();
+                stage.setOnButtonClickListener(this);
+                scheduleLookahead();
+            } else
+                hide();
+            return;
+        }
+        View out;
+        View in;
+        if (!end) {
+            // The surface would stay on top of a crossfade, so a surface scene
+            // gives way at once and the next one fades in on the same stage.
+            if (prevScene != null && !stage.isSurfaceScene()) {
+                Logv("crossfade scenes");
+                setStage(true);
+                setupStageBlending(stage);
+                setupStageBlending(nextStage);
+                addToFrame(nextStage);
+                nextStage.show();
+                nextStage.setScene(scene);
+                out = stage;
+                in = nextStage;
+            } else {
+                Logv("fade in first scene");
+                setupStageBlending(stage);
+                stage.show();
+                stage.setScene(scene);
+                out = null;
+                in = stage;
+            }
+            // Taps during the transition fast-forward it and move on.
+            ((Stage) in).setOnButtonClickListener(this);
+        } else {
+            Logv("fade out final scene");
+            out = stage;
+            in = null;
+        }
+        transitionSwap = out != null && in != null;
+        transitionEnd = end;
+        runningTransition = getTransition(transition);
+        // Reduced quality sheds the per-view layers along with the blend layers.
+        if (runningTransition instanceof PropertyTransition)
+            ((PropertyTransition) runningTransition).setLayersEnabled(quality == null || quality.useLayers());
+        if (quality != null)
+            quality.startTransition(frame);
+        runningTransition.start(out, in, getAnimTime(scene), this);
+    }
+
+    // Surface scenes crossfade on the stage's render thread, so the stage stays
+    // put and no Transition runs; only the scene's animation time is used.
+    private void showOnSurface(boolean end, int transition) {
+        int time = transition == NONE ? 0 : getAnimTime(scene);
+        if (end) {
+            Logv("fade out final scene on surface");
+            if (time > 0)
+                stage.fadeOutSurface(time, surfaceFadedOut);
+            else
+                hide();
+            return;
+        }
+        stage.setSurfaceTransitionTime(time);
+        stage.show();
+        stage.setScene(scene);
+        stage.setOnButtonClickListener(this);
+    }
+
+    private void pushHistory(int index) {
+        if (historySize == history.length) {
+            int[] grown = new int[historySize * 2];
+            System.arraycopy(history, 0, grown, 0, historySize);
+            history = grown;
+        }
+        history[historySize++] = index;
+    }
+
+    // Starts decoding the following scene's image while this one is read.
+    private void prefetchNextImage() {
+        int index = resolveNext(sceneIndex);
+        if (index >= scenes.size())
+            return;
+        Scene next = scenes.get(index);
+        if (next.image != -1 && (next.transition & EMPTY_SCENE) == 0)
+            stage.prefetchImage(next.image);
+    }
+
+    @Override
+    public void onTransitionEnd(Transition transition) {
+        if (transition != runningTransition)
+            return;
+        Logv("animation complete");
+        runningTransition = null;
+        if (quality != null)
+            quality.endTransition();
+        if (!transitionEnd) {
+            if (transitionSwap) {
+                Logv("swap scenes");
+                Stage tmpStage = nextStage;
+                stage.hide();
+                frame.removeView(stage);
+                nextStage = stage;
+                stage = tmpStage;
+            }
+            releaseStageBlending(stage);
+            releaseStageBlending(nextStage);
+            scheduleLookahead();
+        } else
+            hide();
+    }
+
+    // Once the UI thread goes idle after a scene is shown, resolves the next
+    // scene to display and prepares it in the spare stage. Tapping through then
+    // only swaps stages and starts the transition.
+    private void scheduleLookahead() {
+        if (lookaheadQueued)
+            return;
+        lookaheadQueued = true;
+        Looper.myQueue().addIdleHandler(lookahead);
+    }
+
+    private void cancelLookahead() {
+        if (lookaheadQueued) {
+            Looper.myQueue().removeIdleHandler(lookahead);
+            lookaheadQueued = false;
         }
     }
 
+    private void prepareNextScene() {
+        if (!isShowing() || runningTransition != null || stage == null || getActivity() == null)
+            return;
+        Scene next = resolveLookahead();
+        // Surface scenes are laid out on show, and change on the current stage.
+        if (next == null || stage.canRenderOnSurface(next))
+            return;
+        Logv("prepare scene %s", next);
+        setStage(true);
+        nextStage.prepare(next, frame.getWidth(), frame.getHeight());
+    }
+
+    // Finds the scene nextScene() is likely to show, if there is one to
+    // prepare. nextScene() resolves it again, as branch conditions may change
+    // in the meantime; a prepared stage is only used if the scene matches.
+    private Scene resolveLookahead() {
+        int index = resolveNext(sceneIndex);
+        if (index >= scenes.size())
+            return null;
+        Scene next = scenes.get(index);
+        if ((next.transition & EMPTY_SCENE) != 0)
+            return null;
+        return next;
+    }
+
     public void setStage(boolean next) {
         if (frame == null) {
-            frame = new FrameLayout(activity);
-            ((ViewGroup) activity.getWindow().getDecorView()).addView(frame);
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
-                Logv("layers setup");
-                Paint paint = null;
-                int layerType = View.LAYER_TYPE_SOFTWARE;
-                if (frame.isHardwareAccelerated()) {
-                    layerType = View.LAYER_TYPE_HARDWARE;
-                    paint = new Paint();
-                    paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.OVERLAY));
-                }
-                frame.setLayerType(layerType, paint);
-            } else {
-                Logv("caching setup");
-                frame.setDrawingCacheEnabled(true);
-            }
+            frame = new StageFrame(getActivity());
         }
-        if (stage == null) {
-            stage = new Stage(activity);
+        if (!frameAttached)
+            attachFrame(getActivity());
+        if (stage == null)
+            stage = newStage();
+        addToFrame(stage);
+        if (next && nextStage == null)
+            nextStage = newStage();
+    }
+
+    private void addToFrame(Stage stage) {
+        if (stage.getParent() == null)
             frame.addView(stage);
+    }
+
+    public boolean isFlatRendering() {
+        return flatRendering;
+    }
+
+    // Draws scenes that use the default layouts without inflating any child
+    // views; see Stage.setFlatRendering().
+    public void setFlatRendering(boolean flatRendering) {
+        this.flatRendering = flatRendering;
+        if (stage != null)
+            stage.setFlatRendering(flatRendering);
+        if (nextStage != null)
+            nextStage.setFlatRendering(flatRendering);
+    }
+
+    public boolean isAdaptiveQuality() {
+        return quality != null;
+    }
+
+    // Lets the tour trade looks for smoothness as it runs; see QualityMonitor.
+    // At QUALITY_REDUCED the spotlight doesn't pulse, animation times are
+    // halved and crossfading stages skip their blending layers. At
+    // QUALITY_MINIMAL scenes change without transitions.
+    public void setAdaptiveQuality(boolean adaptiveQuality) {
+        if (adaptiveQuality == (quality != null))
+            return;
+        if (quality != null)
+            quality.cancelTransition();
+        Activity activity = getActivity();
+        quality = adaptiveQuality && activity != null ? new QualityMonitor(activity) : null;
+        applyQuality();
+    }
+
+    // QUALITY_FULL unless adaptive quality is on.
+    public int getQualityLevel() {
+        return quality == null ? QUALITY_FULL : quality.getLevel();
+    }
+
+    private void applyQuality() {
+        boolean pulse = quality == null || quality.usePulse();
+        if (stage != null)
+            stage.setPulseEnabled(pulse);
+        if (nextStage != null)
+            nextStage.setPulseEnabled(pulse);
+    }
+
+    public boolean isSurfaceRendering() {
+        return surfaceRendering;
+    }
+
+    // Draws scenes that use the default layouts into a surface of their own
+    // from a render thread, so their crossfades and pulse keep going while the
+    // main thread is busy; see Stage.setSurfaceRendering(). Scenes that need
+    // child views still show on the stage, with the usual transitions.
+    public void setSurfaceRendering(boolean surfaceRendering) {
+        this.surfaceRendering = surfaceRendering;
+        if (stage != null)
+            stage.setSurfaceRendering(surfaceRendering);
+        if (nextStage != null)
+            nextStage.setSurfaceRendering(surfaceRendering);
+    }
+
+    public int getHostMode() {
+        return hostMode;
+    }
+
+    // HOST_DECOR adds the overlay to the Activity's decor view. HOST_WINDOW shows
+    // it in its own panel window instead: showing or hiding a tour then leaves the
+    // Activity's hierarchy untouched, and the system compositor blends the two
+    // windows. Takes effect the next time the overlay is attached.
+    public void setHostMode(int hostMode) {
+        this.hostMode = hostMode;
+    }
+
+    private void attachFrame(Activity activity) {
+        View decorView = activity.getWindow().getDecorView();
+        frameInWindow = false;
+        if (hostMode == HOST_WINDOW) {
+            IBinder token = decorView.getWindowToken();
+            if (token != null) {
+                WindowManager.LayoutParams params = new WindowManager.LayoutParams(
+                        WindowManager.LayoutParams.MATCH_PARENT, WindowManager.LayoutParams.MATCH_PARENT,
+                        WindowManager.LayoutParams.TYPE_APPLICATION_PANEL,
+                        WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN |
+                                // Keys, and the IME, stay with the Activity's window.
+                                WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE,
+                        PixelFormat.TRANSLUCENT);
+                params.token = token;
+                // A compile-time constant, so harmless before API 11 where no window has it set.
+                params.flags |= activity.getWindow().getAttributes().flags & WindowManager.LayoutParams.FLAG_HARDWARE_ACCELERATED;
+                windowManager = activity.getWindowManager();
+                windowManager.addView(frame, params);
+                frameInWindow = true;
+            } else
+                Logd("window not attached yet, hosting stage in decor view");
         }
-        if (next && nextStage == null) {
-            nextStage = new Stage(activity);
-            setupStageBlending(stage);
-            setupStageBlending(nextStage);
+        if (!frameInWindow)
+            ((ViewGroup) decorView).addView(frame);
+        frameAttached = true;
+        setupFrameLayer();
+    }
+
+    // In the decor view, the spotlight's DST_OUT hole has to cut into an offscreen
+    // copy of the overlay or it would clear the Activity's window too. In its own
+    // translucent window the window surface plays that role, so no layer is needed.
+    private void setupFrameLayer() {
+        frameLayered = !frameInWindow;
+        if (!frameLayered) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB)
+                frame.setLayerType(View.LAYER_TYPE_NONE, null);
+            else
+                frame.setPooledCacheEnabled(false);
+            return;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            Logv("layers setup");
+            Paint paint = null;
+            int layerType = View.LAYER_TYPE_SOFTWARE;
+            if (frame.isHardwareAccelerated()) {
+                layerType = View.LAYER_TYPE_HARDWARE;
+                paint = new Paint();
+                paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.OVERLAY));
+            }
+            frame.setLayerType(layerType, paint);
+        } else {
+            Logv("caching setup");
+            frame.setPooledCacheEnabled(true);
         }
     }
 
-    private static void setupStageBlending(Stage stage) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB)
+    private void detachFrame() {
+        if (frame == null || !frameAttached)
+            return;
+        frameAttached = false;
+        if (frameInWindow) {
+            windowManager.removeView(frame);
+            windowManager = null;
+            frameInWindow = false;
+        } else if (frame.getParent() != null)
+            ((ViewGroup) frame.getParent()).removeView(frame);
+    }
+
+    private Stage newStage() {
+        Stage result = new Stage(getActivity());
+        result.setFlatRendering(flatRendering);
+        result.setSurfaceRendering(surfaceRendering);
+        result.setPulseEnabled(quality == null || quality.usePulse());
+        return result;
+    }
+
+    // Stage layers are only needed to blend two stages while they fade, so they
+    // are created when a transition starts and released as soon as it ends.
+    private void setupStageBlending(Stage stage) {
+        if (stage != null && (quality == null || quality.useLayers()))
             stage.setLayerMode(PorterDuff.Mode.ADD);
-        else
-            stage.setDrawingCacheEnabled(true);
+    }
+
+    private static void releaseStageBlending(Stage stage) {
+        if (stage != null)
+            stage.clearLayerMode();
+    }
+
+    // Bytes of offscreen buffers currently held: the frame's layer (needed for the
+    // spotlight to cut through the stage background) plus any stage blending layers.
+    public int getLayerMemoryBytes() {
+        int result = 0;
+        if (frame != null && frameAttached && frameLayered)
+            result += frame.getWidth() * frame.getHeight() * 4;
+        if (stage != null)
+            result += stage.getLayerMemoryBytes();
+        if (nextStage != null)
+            result += nextStage.getLayerMemoryBytes();
+        return result;
     }
 
     public void show() {
@@ -220,11 +803,127 @@ public class Script implements View.OnClickListener {
     }
 
     public void show(boolean showAll) {
-        if (sceneIterator != null)
+        // Showing now overrides a pending showDeferred().
+        cancelDeferredShow();
+        if (showing)
             return;
         this.showAll = showAll;
-        sceneIterator = scenes.iterator();
+        showing = true;
+        sceneIndex = -1;
+        historySize = 0;
         nextScene();
+        if (isShowing())
+            TipScheduler.getInstance().onScriptShown(this);
+    }
+
+    public void showDeferred() {
+        showDeferred(false, false);
+    }
+
+    // Shows the tour without adding to the Activity's startup. Nothing is done
+    // until its window has drawn its first frame or, if waitForFullyDrawn, until
+    // the app calls reportFullyDrawn(). The first scene is then inflated, bound
+    // and measured on one frame, and shown on the next.
+    public void showDeferred(boolean showAll, boolean waitForFullyDrawn) {
+        Activity activity = getActivity();
+        if (isShowing() || deferredState != DEFER_NONE || activity == null)
+            return;
+        deferredShowAll = showAll;
+        deferredView = activity.getWindow().getDecorView();
+        if (waitForFullyDrawn) {
+            deferredState = DEFER_FULLY_DRAWN;
+            return;
+        }
+        deferredState = DEFER_FIRST_FRAME;
+        deferredView.getViewTreeObserver().addOnPreDrawListener(firstFrameListener);
+        // An idle window draws no frame by itself.
+        deferredView.invalidate();
+    }
+
+    // Starts a tour waiting in showDeferred() for the app to be fully drawn.
+    public void reportFullyDrawn() {
+        if (deferredState != DEFER_FULLY_DRAWN)
+            return;
+        deferredState = DEFER_RUNNING;
+        postNextFrame(prepareFirstScene);
+    }
+
+    private final ViewTreeObserver.OnPreDrawListener firstFrameListener = new ViewTreeObserver.OnPreDrawListener() {
+        @Override
+        public boolean onPreDraw() {
+            ViewTreeObserver observer = deferredView.getViewTreeObserver();
+            if (observer.isAlive())
+                observer.removeOnPreDrawListener(this);
+            deferredState = DEFER_RUNNING;
+            // Runs once this frame has been drawn.
+            deferredView.post(prepareFirstScene);
+            return true;
+        }
+    };
+
+    private final Runnable prepareFirstScene = new Runnable() {
+        @Override
+        public void run() {
+            if (deferredState != DEFER_RUNNING || getActivity() == null)
+                return;
+            showAll = deferredShowAll;
+            sceneIndex = -1;
+            Scene first = resolveLookahead();
+            if (first != null) {
+                Logv("prepare first scene");
+                if (stage == null)
+                    stage = newStage();
+                stage.prepare(first, deferredView.getWidth(), deferredView.getHeight());
+            }
+            postNextFrame(showPrepared);
+        }
+    };
+
+    private final Runnable showPrepared = new Runnable() {
+        @Override
+        public void run() {
+            if (deferredState != DEFER_RUNNING)
+                return;
+            deferredState = DEFER_NONE;
+            deferredView = null;
+            show(deferredShowAll);
+        }
+    };
+
+    private void postNextFrame(Runnable runnable) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+            postOnAnimation(deferredView, runnable);
+        else
+            deferredView.post(runnable);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static void postOnAnimation(View view, Runnable runnable) {
+        view.postOnAnimation(runnable);
+    }
+
+    private void cancelDeferredShow() {
+        if (deferredState == DEFER_NONE)
+            return;
+        if (deferredState == DEFER_FIRST_FRAME) {
+            ViewTreeObserver observer = deferredView.getViewTreeObserver();
+            if (observer.isAlive())
+                observer.removeOnPreDrawListener(firstFrameListener);
+        }
+        deferredView.removeCallbacks(prepareFirstScene);
+        deferredView.removeCallbacks(showPrepared);
+        deferredState = DEFER_NONE;
+        deferredView = null;
+    }
+
+    // Queues the tour with the process-wide TipScheduler, which shows it once
+    // no other tour is showing and the app is quiet. Higher priorities go first.
+    public void schedule(int priority) {
+        schedule(priority, false);
+    }
+
+    public void schedule(int priority, boolean showAll) {
+        TipScheduler.getInstance().enqueue(this, priority, showAll);
     }
 
     private static int blend_pixel (int color1, int color2, float alpha) {
@@ -246,33 +945,116 @@ public class Script implements View.OnClickListener {
 
     public void hide() {
         Logv("hide");
+        boolean wasShowing = isShowing();
+        cancelDeferredShow();
+        Transition transition = runningTransition;
+        runningTransition = null;
+        if (transition != null)
+            transition.finish();
+        cancelLookahead();
+        if (quality != null)
+            quality.cancelTransition();
+        recordDismissed(EventRecorder.DISMISS_HIDDEN);
+        if (recorder != null)
+            recorder.flush();
         if (stage != null) {
-            stage.setScene(null);
+            stage.cancelSurfaceFadeOut();
             stage.hide();
+            stage.setScene(null);
+            stage.setOnButtonClickListener(null);
+            releaseStageBlending(stage);
         }
         if (nextStage != null) {
-            nextStage.setScene(null);
             nextStage.hide();
+            nextStage.setScene(null);
+            releaseStageBlending(nextStage);
+            // The transition was finished after runningTransition was cleared,
+            // so its swap didn't run; the spare stage leaves the kept frame here.
+            if (nextStage.getParent() != null)
+                ((ViewGroup) nextStage.getParent()).removeView(nextStage);
         }
-        if (frame != null)
-            ((ViewGroup) activity.getWindow().getDecorView()).removeView(frame);
-        sceneIterator = null;
+        detachFrame();
+        showing = false;
+        historySize = 0;
+        scene = null;
+        if (wasShowing)
+            TipScheduler.getInstance().onScriptHidden(this);
+    }
+
+    // hide() keeps the detached frame and its stages, with their inflated
+    // children, so showing the tour again attaches at once. This drops them;
+    // it is called on destroy() and when the system asks for memory back.
+    public void release() {
+        Logv("release");
+        hide();
         frame = null;
         stage = null;
         nextStage = null;
-        scene = null;
+    }
+
+    private boolean isShowing() {
+        return showing;
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private void registerComponentCallbacks() {
+        ComponentCallbacks2 callbacks = new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                Logv("onTrimMemory %d", level);
+                if (level >= TRIM_MEMORY_UI_HIDDEN && !isShowing())
+                    release();
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+                // Retained children were inflated for the old configuration.
+                if (!isShowing())
+                    release();
+            }
+
+            @Override
+            public void onLowMemory() {
+                Script.this.onLowMemory();
+            }
+        };
+        componentCallbacks = callbacks;
+        appContext.registerComponentCallbacks(callbacks);
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private void unregisterComponentCallbacks() {
+        appContext.unregisterComponentCallbacks((ComponentCallbacks2) componentCallbacks);
+        componentCallbacks = null;
+    }
+
+    // Drops the retained overlay if no tour is showing, cached scene images, and
+    // pooled offscreen bitmaps kept for pre-Honeycomb stages. Called automatically on API 14 and
+    // later; before that, forward Activity.onLowMemory() here.
+    public void onLowMemory() {
+        if (!isShowing())
+            release();
+        BitmapPool.getInstance().clear();
+        ImageLoader.getInstance().clear();
     }
 
     public SharedPreferences getSharedPreferences() {
         if (sharedPreferences == null)
-            sharedPreferences = activity.getSharedPreferences("spotlight", Context.MODE_PRIVATE);
+            sharedPreferences = appContext.getSharedPreferences("spotlight", Context.MODE_PRIVATE);
         return sharedPreferences;
     }
 
-    public class Scene {
+    // An immutable scene definition. Scenes hold no Context: text given as a
+    // resource id is resolved when the scene is bound to a stage, and actors
+    // find their views when shown, so scenes can be built on any thread and
+    // shared by every Script in the process.
+    public static class Scene {
         private final CharSequence titleText;
+        private final int titleTextID;
         private final CharSequence detailText;
+        private final int detailTextID;
         private final CharSequence buttonText;
+        private final int buttonTextID;
         private final int buttonLayout;
         private final int spotlightLayout;
         private final int labelLayout;
@@ -280,11 +1062,25 @@ public class Script implements View.OnClickListener {
         private final int animTime;
         private final Actor actor;
         private final int oneShotID;
+        private final int image;
+        private final int id;
+        private final Branch[] branches;
 
         public Scene(CharSequence titleText, CharSequence detailText, CharSequence buttonText, int buttonLayout, int spotlightLayout, int labelLayout, Actor actor, int transition, int animTime, int oneShotID) {
+            this(titleText, detailText, buttonText, buttonLayout, spotlightLayout, labelLayout, actor, transition, animTime, oneShotID, -1);
+        }
+
+        public Scene(CharSequence titleText, CharSequence detailText, CharSequence buttonText, int buttonLayout, int spotlightLayout, int labelLayout, Actor actor, int transition, int animTime, int oneShotID, int image) {
+            this(titleText, -1, detailText, -1, buttonText, -1, buttonLayout, spotlightLayout, labelLayout, actor, transition, animTime, oneShotID, image, -1, NO_BRANCHES);
+        }
+
+        private Scene(CharSequence titleText, int titleTextID, CharSequence detailText, int detailTextID, CharSequence buttonText, int buttonTextID, int buttonLayout, int spotlightLayout, int labelLayout, Actor actor, int transition, int animTime, int oneShotID, int image, int id, Branch[] branches) {
             this.titleText = titleText;
+            this.titleTextID = titleTextID;
             this.detailText = detailText;
+            this.detailTextID = detailTextID;
             this.buttonText = buttonText;
+            this.buttonTextID = buttonTextID;
             this.buttonLayout = buttonLayout;
             this.spotlightLayout = spotlightLayout;
             this.labelLayout = labelLayout;
@@ -292,18 +1088,25 @@ public class Script implements View.OnClickListener {
             this.transition = transition;
             this.animTime = animTime;
             this.oneShotID = oneShotID;
+            this.image = image;
+            this.id = id;
+            this.branches = branches;
         }
 
-        public CharSequence getTitleText() {
-            return titleText;
+        private static CharSequence resolve(Context context, CharSequence text, int id) {
+            return id != -1 ? context.getText(id) : text;
         }
 
-        public CharSequence getDetailText() {
-            return detailText;
+        public CharSequence getTitleText(Context context) {
+            return resolve(context, titleText, titleTextID);
         }
 
-        public CharSequence getButtonText() {
-            return buttonText;
+        public CharSequence getDetailText(Context context) {
+            return resolve(context, detailText, detailTextID);
+        }
+
+        public CharSequence getButtonText(Context context) {
+            return resolve(context, buttonText, buttonTextID);
         }
 
         public int getButtonLayout() {
@@ -322,39 +1125,127 @@ public class Script implements View.OnClickListener {
             return actor;
         }
 
+        // Drawable resource shown in the label, or -1 for none.
+        public int getImage() {
+            return image;
+        }
+
+        public int getTransition() {
+            return transition;
+        }
+
+        // In milliseconds, or -1 for the platform's medium animation time.
+        public int getAnimTime() {
+            return animTime;
+        }
+
+        public int getOneShotID() {
+            return oneShotID;
+        }
+
+        // Identifies the scene for jumpTo() and branches, or -1.
+        public int getID() {
+            return id;
+        }
+
+        public List<Branch> getBranches() {
+            return Collections.unmodifiableList(Arrays.asList(branches));
+        }
+
         private String prefsKey() {
             return String.format("oneShot%d", oneShotID);
         }
+    }
+
+    private static final Branch[] NO_BRANCHES = new Branch[0];
+
+    // Decides whether a branch is taken. Conditions may be tested more than once
+    // and ahead of time, when the following scene is prepared, so they should
+    // be quick and free of side effects.
+    public interface Condition {
+        boolean test(Script script);
+    }
 
-        private boolean shouldDisplay() {
-            if (oneShotID < 0)
-                return true;
-            return getSharedPreferences().getBoolean(prefsKey(), true);
+    // An edge from a scene to the scene with id target, taken when the tour
+    // moves on from the scene and condition, if any, holds. A scene's branches
+    // are tried in order; if none is taken the tour goes on to the next scene.
+    public static final class Branch {
+        private final Condition condition;
+        private final int target;
+
+        public Branch(Condition condition, int target) {
+            this.condition = condition;
+            this.target = target;
         }
 
-        private void recordFired() {
-            if (oneShotID < 0)
-                return;
-            getSharedPreferences().edit().putBoolean(prefsKey(), false).commit();
+        public Condition getCondition() {
+            return condition;
+        }
+
+        public int getTarget() {
+            return target;
         }
     }
 
+    private boolean shouldDisplay(Scene scene) {
+        if (scene.oneShotID < 0)
+            return true;
+        return getSharedPreferences().getBoolean(scene.prefsKey(), true);
+    }
+
+    private void recordFired(Scene scene) {
+        if (scene.oneShotID < 0)
+            return;
+        applyEdit(getSharedPreferences().edit().putBoolean(scene.prefsKey(), false));
+    }
+
+    private int getAnimTime(Scene scene) {
+        int result = scene.animTime;
+        if (result < 0)
+            result = appContext.getResources().getInteger(android.R.integer.config_mediumAnimTime);
+        if (quality != null)
+            result = quality.adjustAnimTime(result);
+        return result;
+    }
+
+    private static void applyEdit(SharedPreferences.Editor editor) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD)
+            applyEditAsync(editor);
+        else
+            editor.commit();
+    }
+
+    // apply() defers the disk write, keeping it off the tap-to-next-scene path.
+    @TargetApi(Build.VERSION_CODES.GINGERBREAD)
+    private static void applyEditAsync(SharedPreferences.Editor editor) {
+        editor.apply();
+    }
+
+    // Returns a builder that adds its scenes to this Script.
     public SceneBuilder getBuilder() {
-        return new SceneBuilder();
+        return new SceneBuilder(this);
     }
 
-    public class SceneBuilder {
+    // Builds scenes without touching a Context, so a tour can be defined once,
+    // on any thread, and passed to Script(Activity, List) from each Activity
+    // that shows it. A builder made with the no-argument constructor collects
+    // the scenes it adds for getScenes().
+    public static class SceneBuilder {
+        private final Script script;
+        private final List<Scene> scenes = new ArrayList<Scene>();
         private CharSequence defaultButtonText = null;
+        private int defaultButtonTextID = -1;
         private int defaultButtonLayout = -1;
         private int defaultSpotlightLayout = -1;
         private int defaultLabelLayout = -1;
         private int defaultTransition = NONE;
-        private final int initialDefaultAnimTime = activity.getResources().getInteger(
-                android.R.integer.config_mediumAnimTime);
-        private int defaultAnimTime = initialDefaultAnimTime;
+        private int defaultAnimTime = -1;
         private CharSequence titleText = null;
+        private int titleTextID = -1;
         private CharSequence detailText = null;
+        private int detailTextID = -1;
         private CharSequence buttonText = defaultButtonText;
+        private int buttonTextID = defaultButtonTextID;
         private int buttonLayout = defaultButtonLayout;
         private int spotlightLayout = defaultSpotlightLayout;
         private int labelLayout = defaultLabelLayout;
@@ -362,30 +1253,45 @@ public class Script implements View.OnClickListener {
         private int animTime = defaultAnimTime;
         private Actor actor = null;
         private int oneShotID = -1;
+        private int image = -1;
+        private int id = -1;
+        private final List<Branch> branches = new ArrayList<Branch>();
+
+        public SceneBuilder() {
+            this(null);
+        }
 
-        public SceneBuilder() {}
+        private SceneBuilder(Script script) {
+            this.script = script;
+        }
         
         public SceneBuilder setTitleText(int id) {
-            titleText = activity.getText(id);
+            titleText = null;
+            titleTextID = id;
             return this;
         }
         
         public SceneBuilder setTitleText(CharSequence s) {
             titleText = s;
+            titleTextID = -1;
             return this;
         }
 
         public SceneBuilder setDetailText(int id) {
-            detailText = activity.getText(id);
+            detailText = null;
+            detailTextID = id;
             return this;
         }
 
         public SceneBuilder setDetailText(CharSequence s) {
             detailText = s;
+            detailTextID = -1;
             return this;
         }
+
         public SceneBuilder setButtonText(int id) {
-            titleText = activity.getText(id);
+            buttonText = null;
+            buttonTextID = id;
             return this;
         }
 
@@ -394,17 +1300,24 @@ public class Script implements View.OnClickListener {
         }
 
         public SceneBuilder setDefaultButtonText(int id) {
-            return setDefaultButtonText(activity.getText(id));
+            defaultButtonText = null;
+            defaultButtonTextID = id;
+            buttonText = null;
+            buttonTextID = id;
+            return this;
         }
 
         public SceneBuilder setDefaultButtonText(CharSequence s) {
             defaultButtonText = s;
+            defaultButtonTextID = -1;
             buttonText = s;
+            buttonTextID = -1;
             return this;
         }
 
         public SceneBuilder setButtonText(CharSequence s) {
-            titleText = s;
+            buttonText = s;
+            buttonTextID = -1;
             return this;
         }
 
@@ -474,7 +1387,7 @@ public class Script implements View.OnClickListener {
         }
 
         public SceneBuilder clearDefaultAnimTime() {
-            return setDefaultAnimTime(initialDefaultAnimTime);
+            return setDefaultAnimTime(-1);
         }
 
         public SceneBuilder setDefaultAnimTime(int milliseconds) {
@@ -488,19 +1401,46 @@ public class Script implements View.OnClickListener {
             return this;
         }
 
+        public SceneBuilder setImage(int id) {
+            image = id;
+            return this;
+        }
+
         public SceneBuilder setOneShotID(int id) {
             oneShotID = id;
             return this;
         }
 
+        public SceneBuilder setID(int id) {
+            this.id = id;
+            return this;
+        }
+
+        // Goes on to the scene with id target instead of the next one.
+        public SceneBuilder addBranch(int target) {
+            return addBranch(null, target);
+        }
+
+        // Goes on to the scene with id target if condition holds when the tour
+        // moves on; branches are tried in the order they were added.
+        public SceneBuilder addBranch(Condition condition, int target) {
+            branches.add(new Branch(condition, target));
+            return this;
+        }
+
         public Scene build() {
-            return new Scene(titleText, detailText, buttonText, buttonLayout, spotlightLayout, labelLayout, actor, transition, animTime, oneShotID);
+            return new Scene(titleText, titleTextID, detailText, detailTextID, buttonText, buttonTextID,
+                    buttonLayout, spotlightLayout, labelLayout, actor, transition, animTime, oneShotID, image,
+                    id, branches.isEmpty() ? NO_BRANCHES : branches.toArray(new Branch[branches.size()]));
         }
         
         public SceneBuilder clear() {
             titleText = null;
+            titleTextID = -1;
             detailText = null;
+            detailTextID = -1;
             buttonText = defaultButtonText;
+            buttonTextID = defaultButtonTextID;
             buttonLayout = defaultButtonLayout;
             spotlightLayout = defaultSpotlightLayout;
             labelLayout = defaultLabelLayout;
@@ -508,15 +1448,26 @@ public class Script implements View.OnClickListener {
             transition = defaultTransition;
             animTime = defaultAnimTime;
             oneShotID = -1;
+            image = -1;
+            id = -1;
+            branches.clear();
             return this;
         }
         
         public SceneBuilder add() {
-            Script.this.add(build());
+            if (script != null)
+                script.add(build());
+            else
+                scenes.add(build());
             this.clear();
             return this;
         }
 
+        // The scenes added so far, when this builder isn't adding to a Script.
+        public List<Scene> getScenes() {
+            return Collections.unmodifiableList(new ArrayList<Scene>(scenes));
+        }
+
         public void end() {
             transition |= EMPTY_SCENE;
             add();
@@ -20,6 +20,7 @@ import android.app.Activity;
 import android.content.Context;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
+import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Point;
 import android.graphics.PorterDuff;
@@ -32,12 +33,26 @@ import android.util.Log;
 import android.util.TypedValue;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
+import android.view.SoundEffectConstants;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewParent;
 import android.widget.Button;
+import android.widget.ImageView;
 import android.widget.TextView;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import us.looking_glass.spotlight.actor.Actor;
+import us.looking_glass.spotlight.actor.ShapedActor;
+import us.looking_glass.spotlight.actor.ViewActor;
+import us.looking_glass.spotlight.draw.ChunkedTextView;
+import us.looking_glass.spotlight.draw.PooledDrawingCache;
 import us.looking_glass.spotlight.draw.Spotlight;
+import us.looking_glass.spotlight.image.ImageLoader;
 
 public class Stage extends ViewGroup implements View.OnTouchListener {
     private final static String TAG = Stage.class.getSimpleName();
@@ -61,6 +76,39 @@ public class Stage extends ViewGroup implements View.OnTouchListener {
     private View label = null;
     private Button button = null;
     private Script.Scene scene;
+    // The actor this stage shows for scene; see showActor().
+    private Actor shownActor = null;
+    private boolean layered = false;
+    private static final List<WeakReference<Stage>> liveStages = new ArrayList<WeakReference<Stage>>();
+    private LabelPlacer labelPlacer = new ScoredLabelPlacer();
+    private final LabelAdapter labelAdapter = new LabelAdapter();
+    private final Rect stageRect = new Rect();
+    private final Rect spotlightRect = new Rect();
+    private final Rect buttonRect = new Rect();
+    private final Rect labelMargins = new Rect();
+    private final Rect labelRect = new Rect();
+    private PooledDrawingCache cache = null;
+    private int imageWidth;
+    private boolean prepared = false;
+    private int scrimColor;
+    private boolean flatRendering = false;
+    private FlatRenderer flat = null;
+    private boolean flatScene = false;
+    private boolean surfaceRendering = false;
+    private SurfaceStageView surfaceView = null;
+    private boolean surfaceScene = false;
+    private boolean surfaceSceneChanged = false;
+    private int surfaceTransitionTime = 0;
+    private boolean pulseEnabled = true;
+    private OnClickListener buttonListener = null;
+    private TextView titleTextView = null;
+    private View detailView = null;
+    private ImageView imageView = null;
+    private CharSequence boundTitle = null;
+    private CharSequence boundDetail = null;
+    private CharSequence boundButtonText = null;
+    private int boundImage = -1;
+    private int imageHeight;
 
     public static Stage install(Activity activity, Stage stage) {
         ViewGroup decorView = (ViewGroup) activity.getWindow().getDecorView();
@@ -90,8 +138,10 @@ public class Stage extends ViewGroup implements View.OnTouchListener {
 
     public Stage(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
+        trackStage(this);
         final TypedArray styled = context.getTheme().obtainStyledAttributes(attrs, R.styleable.Stage, R.attr.stageStyle, R.style.Stage);
-        setBackgroundColor(styled.getColor(R.styleable.Stage_stageBackgroundColor, 0xc0000000));
+        scrimColor = styled.getColor(R.styleable.Stage_stageBackgroundColor, 0xc0000000);
+        setBackgroundColor(scrimColor);
         spotlightLayout = styled.getResourceId(R.styleable.Stage_stageSpotlightLayout, R.layout.default_spotlight);
         labelLayout = styled.getResourceId(R.styleable.Stage_stageLabelLayout, R.layout.default_label);
         buttonLayout = styled.getResourceId(R.styleable.Stage_stageButtonLayout, R.layout.default_button);
@@ -99,13 +149,159 @@ public class Stage extends ViewGroup implements View.OnTouchListener {
         setVisibility(GONE);
         String packageName = context.getPackageName();
         Resources resources = context.getResources();
+        // Scene images are decoded for the largest size the label shows them at.
+        DisplayMetrics displayMetrics = resources.getDisplayMetrics();
+        imageWidth = Math.min(resources.getDimensionPixelSize(R.dimen.spotlight_image_max_width), displayMetrics.widthPixels);
+        imageHeight = Math.min(resources.getDimensionPixelSize(R.dimen.spotlight_image_max_height), displayMetrics.heightPixels);
     }
 
+    // Leak diagnostic: counts Stages that are still reachable although their
+    // Activity is finishing, logging each one when debug logging is on. Call it
+    // after a GC once a tour's Activity has gone away; anything above zero is
+    // being kept alive by a reference that should have been dropped.
+    public static int countRetainedStages() {
+        int result = 0;
+        Iterator<WeakReference<Stage>> iterator = liveStages.iterator();
+        while (iterator.hasNext()) {
+            Stage stage = iterator.next().get();
+            if (stage == null) {
+                iterator.remove();
+                continue;
+            }
+            Context context = stage.getContext();
+            if (context instanceof Activity && ((Activity) context).isFinishing()) {
+                Logd("retained stage %s of finishing %s", stage, context);
+                result++;
+            }
+        }
+        return result;
+    }
+
+    // Drops the entries of collected stages as new ones are added, so the list
+    // stays as long as the number of live stages.
+    private static void trackStage(Stage stage) {
+        Iterator<WeakReference<Stage>> iterator = liveStages.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().get() == null)
+                iterator.remove();
+        }
+        liveStages.add(new WeakReference<Stage>(stage));
+    }
+
+    // The inflated button, or null while the scene is drawn by the flat renderer.
     public Button getButton() {
         return button;
     }
 
+    public void setOnButtonClickListener(OnClickListener listener) {
+        buttonListener = listener;
+        if (button != null)
+            button.setOnClickListener(listener);
+    }
+
+    public boolean isFlatRendering() {
+        return flatRendering;
+    }
+
+    // Draws scenes that use the default spotlight, label and button layouts
+    // directly from this view, with no child views; see FlatRenderer. Scenes
+    // with custom layouts, and scene images, still inflate. Flat scenes have
+    // no pulse.
+    public void setFlatRendering(boolean flatRendering) {
+        if (flatRendering == this.flatRendering)
+            return;
+        this.flatRendering = flatRendering;
+        if (getVisibility() == VISIBLE) {
+            updateChildViews();
+            requestLayout();
+        }
+    }
+
+    public boolean isSurfaceRendering() {
+        return surfaceRendering;
+    }
+
+    // Like flat rendering, but the scene is drawn into a SurfaceView above the
+    // window by a render thread of its own; see SurfaceStageView. Scenes drawn
+    // this way change with a crossfade on the render thread, set up through
+    // setSurfaceTransitionTime(), rather than with a Transition on the stage,
+    // whose alpha and translation the surface doesn't follow.
+    public void setSurfaceRendering(boolean surfaceRendering) {
+        if (surfaceRendering == this.surfaceRendering)
+            return;
+        this.surfaceRendering = surfaceRendering;
+        if (flatScene)
+            leaveFlat();
+        if (getVisibility() == VISIBLE) {
+            updateChildViews();
+            requestLayout();
+        }
+    }
+
+    public boolean isPulseEnabled() {
+        return pulseEnabled;
+    }
+
+    public void setPulseEnabled(boolean pulseEnabled) {
+        if (pulseEnabled == this.pulseEnabled)
+            return;
+        this.pulseEnabled = pulseEnabled;
+        if (surfaceView != null)
+            surfaceView.setPulseEnabled(pulseEnabled);
+        if (spotlight != null && getVisibility() == VISIBLE && spotlight.getVisibility() == VISIBLE) {
+            if (pulseEnabled)
+                spotlight.startPulse();
+            else
+                spotlight.stopPulse();
+        }
+    }
+
+    // Whether scene would be drawn on the surface if it were bound now.
+    boolean canRenderOnSurface(Script.Scene scene) {
+        return surfaceRendering && isDefaultScene(scene);
+    }
+
+    // Whether the bound scene is drawn on the surface.
+    boolean isSurfaceScene() {
+        return surfaceScene;
+    }
+
+    // Length of the crossfade to the next scene bound on the surface.
+    void setSurfaceTransitionTime(int milliseconds) {
+        surfaceTransitionTime = milliseconds;
+    }
+
+    void fadeOutSurface(int milliseconds, Runnable end) {
+        if (surfaceScene)
+            surfaceView.fadeOut(milliseconds, end);
+    }
+
+    void cancelSurfaceFadeOut() {
+        if (surfaceView != null)
+            surfaceView.cancelFadeOut();
+    }
+
+    private boolean canRenderFlat() {
+        return (flatRendering || surfaceRendering) && isDefaultScene(scene);
+    }
+
+    private boolean isDefaultScene(Script.Scene scene) {
+        if (spotlightLayout != R.layout.default_spotlight ||
+                labelLayout != R.layout.default_label || buttonLayout != R.layout.default_button)
+            return false;
+        return scene == null || (scene.getSpotlightLayout() == -1 && scene.getLabelLayout() == -1 &&
+                scene.getButtonLayout() == -1 && scene.getImage() == -1);
+    }
+
+    // Border of the spotlight ring, which actors placed INSIDE keep clear of.
+    public float getSpotlightBorder() {
+        if (flatScene)
+            return flat.getBorder();
+        return spotlight == null ? 0 : spotlight.getBorder();
+    }
+
     void setLayerMode(PorterDuff.Mode mode) {
+        layered = true;
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
             Paint layerPaint = null;
             if (mode != null) {
@@ -117,11 +313,33 @@ public class Stage extends ViewGroup implements View.OnTouchListener {
             } else {
                 setLayerType(LAYER_TYPE_SOFTWARE, layerPaint);
             }
-        } else {
-            setDrawingCacheEnabled(true);
+        } else if (cache == null) {
+            cache = new PooledDrawingCache();
         }
     }
 
+    void clearLayerMode() {
+        if (!layered)
+            return;
+        layered = false;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            setLayerType(LAYER_TYPE_NONE, null);
+        } else if (cache != null) {
+            cache.release();
+            cache = null;
+            invalidate();
+        }
+    }
+
+    boolean isLayered() {
+        return layered;
+    }
+
+    // Size of the offscreen buffer backing this stage's layer or drawing cache.
+    int getLayerMemoryBytes() {
+        return layered ? getWidth() * getHeight() * 4 : 0;
+    }
+
     private int getVisibleTop() {
         TypedValue tv = new TypedValue();
         Rect visible = new Rect();
@@ -143,6 +361,14 @@ public class Stage extends ViewGroup implements View.OnTouchListener {
 
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        if (surfaceScene) {
+            layoutSurface();
+            return;
+        }
+        if (flatScene) {
+            layoutFlat();
+            return;
+        }
         int myWidth = getMeasuredWidth();
         int myHeight = getMeasuredHeight();
         Logv("measured dimensions: %dx%d", myWidth, myHeight);
@@ -162,103 +388,51 @@ public class Stage extends ViewGroup implements View.OnTouchListener {
         int spotlightLayoutTop = myHeight;
         int spotlightLayoutBottom = myHeight;
         Point spotlightPosition = null;
-        if (scene != null && scene.getActor() != null)
-            spotlightPosition = scene.getActor().getPosition();
+        if (shownActor != null)
+            spotlightPosition = shownActor.getPosition();
         Logv("button margins: %d %d %d %d", buttonParams.leftMargin, buttonParams.topMargin, buttonParams.rightMargin, buttonParams.bottomMargin    );
         int topSpace = getVisibleTop();
         if (spotlightPosition == null) {
             Logv("no spotlight");
             spotlight.setVisibility(GONE);
+            spotlight.stopPulse();
+            spotlight.setShape(Spotlight.CIRCLE);
             spotlight.setRadius(0);
             spotlight.measure(unspecified, unspecified);
         } else {
             Logv("spotlight");
+            Actor actor = shownActor;
+            int shape = getActorShape(actor);
             spotlight.setVisibility(VISIBLE);
-            spotlight.setRadius(scene.getActor().getRadius());
+            spotlight.setShape(shape);
+            if (shape == Spotlight.CIRCLE)
+                spotlight.setRadius(actor.getRadius());
+            else
+                spotlight.setExtent(((ShapedActor) actor).getHalfWidth(), ((ShapedActor) actor).getHalfHeight());
             spotlight.measure(unspecified, unspecified);
-            int spotlightRadius = spotlight.getOuterRadius();
-            Logv("spotlight position: %d,%d diameter: %d, measured dimensions: %dx%d", spotlightPosition.x, spotlightPosition.y, spotlight.getOuterDiameter(), spotlight.getMeasuredWidth(), spotlight.getMeasuredHeight());
-            spotlightLayoutLeft = spotlightPosition.x - spotlightRadius - spotlightParams.leftMargin;
-            spotlightLayoutRight = spotlightPosition.x + spotlightRadius + spotlightParams.rightMargin;
-            spotlightLayoutTop = spotlightPosition.y - spotlightRadius - spotlightParams.topMargin;
-            spotlightLayoutBottom = spotlightPosition.y + spotlightRadius + spotlightParams.bottomMargin;
+            if (pulseEnabled)
+                spotlight.startPulse();
+            else
+                spotlight.stopPulse();
+            int spotlightHalfWidth = spotlight.getOuterHalfWidth();
+            int spotlightHalfHeight = spotlight.getOuterHalfHeight();
+            Logv("spotlight position: %d,%d measured dimensions: %dx%d", spotlightPosition.x, spotlightPosition.y, spotlight.getMeasuredWidth(), spotlight.getMeasuredHeight());
+            spotlightLayoutLeft = spotlightPosition.x - spotlightHalfWidth - spotlightParams.leftMargin;
+            spotlightLayoutRight = spotlightPosition.x + spotlightHalfWidth + spotlightParams.rightMargin;
+            spotlightLayoutTop = spotlightPosition.y - spotlightHalfHeight - spotlightParams.topMargin;
+            spotlightLayoutBottom = spotlightPosition.y + spotlightHalfHeight + spotlightParams.bottomMargin;
         }
 
-        int labelHeight = 0;
-        int labelHorizontalMargins = labelParams.leftMargin + labelParams.rightMargin;
-        int labelVerticalMargins = labelParams.topMargin + labelParams.bottomMargin;
-        boolean gotLabel = true;
-        int labelLayoutLeft = 0;
-        int labelLayoutTop = 0;
-        int labelLayoutRight = 0;
-        int labelLayoutBottom = 0;
-        do {
-            int v;
-            labelHeight = measureLabel(myWidth - labelHorizontalMargins);
-            v = Math.min(spotlightLayoutTop, buttonLayoutTop);
-            if (labelHeight <= v - topSpace - labelVerticalMargins) {
-                Logv("placed label above Spotlight");
-                labelLayoutLeft = labelParams.leftMargin;
-                labelLayoutTop = topSpace + labelParams.topMargin;
-                labelLayoutRight = labelLayoutLeft + label.getMeasuredWidth();
-                labelLayoutBottom = labelLayoutTop + labelHeight;
-                break;
-            } else
-                Logv("not enough space above Spotlight: %d", v - topSpace - labelVerticalMargins);
-            v = (buttonLayoutTop > spotlightLayoutBottom ? buttonLayoutTop : myHeight) - spotlightLayoutBottom;
-            if (labelHeight <= v - labelVerticalMargins) {
-                Logv("placed label below Spotlight");
-                labelLayoutLeft = labelParams.leftMargin;
-                labelLayoutTop = spotlightLayoutBottom + labelParams.topMargin;
-                labelLayoutRight = labelLayoutLeft + label.getMeasuredWidth();
-                labelLayoutBottom = labelLayoutTop + labelHeight;
-                break;
-            } else
-                Logv("not enough space below Spotlight: %d", v - labelVerticalMargins);
-            labelHeight = measureLabel(spotlightLayoutLeft - labelHorizontalMargins);
-            v = buttonLayoutLeft < spotlightLayoutLeft ? buttonLayoutTop : myHeight;
-            if (labelHeight <= v - topSpace - labelVerticalMargins) {
-                Logv("placed label left of Spotlight");
-                labelLayoutLeft = labelParams.leftMargin;
-                labelLayoutTop = topSpace + labelParams.topMargin;
-                labelLayoutRight = labelLayoutLeft + label.getMeasuredWidth();
-                labelLayoutBottom = labelLayoutTop + labelHeight;
-                break;
-            } else
-                Logv("not enough space left of Spotlight: %d", v - topSpace - labelVerticalMargins);
-            labelHeight = measureLabel(myWidth - spotlightLayoutRight - labelHorizontalMargins);
-            v = buttonLayoutRight > spotlightLayoutRight ? buttonLayoutTop : myHeight;
-            if (labelHeight <= v - topSpace - labelVerticalMargins) {
-                Logv("placed label right of Spotlight");
-                labelLayoutLeft = spotlightLayoutRight + labelParams.leftMargin;
-                labelLayoutTop = topSpace + labelParams.topMargin;
-                labelLayoutRight = labelLayoutLeft + label.getMeasuredWidth();
-                labelLayoutBottom = labelLayoutTop + labelHeight;
-                break;
-            } else
-                Logv("not enought space right of Spotlight: %d", v - topSpace - labelVerticalMargins);
-            labelHeight = measureLabel(buttonLayoutLeft - labelHorizontalMargins);
-            v = spotlightLayoutBottom < buttonLayoutTop ? spotlightLayoutBottom : topSpace;
-            if (labelHeight <= myHeight - v - labelVerticalMargins) {
-                Logv("placed label left of button");
-                labelLayoutLeft = labelParams.leftMargin;
-                labelLayoutTop = v + labelParams.topMargin;
-                labelLayoutRight = labelLayoutLeft + label.getMeasuredWidth();
-                labelLayoutBottom = labelLayoutTop + labelHeight;
-                break;
-            } else
-                Logv("not enought space left of button: %d", myHeight - v - labelVerticalMargins);
-            Logv("label fit failed, using fallback fullscreen placement");
-            labelLayoutLeft = labelParams.leftMargin;
-            labelLayoutTop = topSpace + labelParams.topMargin;
-            labelLayoutRight = myWidth - labelParams.rightMargin;
-            labelLayoutBottom = myHeight - labelParams.bottomMargin;
-            int width = MeasureSpec.makeMeasureSpec(labelLayoutRight - labelLayoutLeft, MeasureSpec.AT_MOST);
-            int height = MeasureSpec.makeMeasureSpec(labelLayoutBottom - labelLayoutTop, MeasureSpec.AT_MOST);
-            label.measure(width, height);
-        } while (false);
+        stageRect.set(0, 0, myWidth, myHeight);
+        if (spotlightPosition == null)
+            spotlightRect.setEmpty();
+        else
+            spotlightRect.set(spotlightLayoutLeft, spotlightLayoutTop, spotlightLayoutRight, spotlightLayoutBottom);
+        buttonRect.set(buttonLayoutLeft, buttonLayoutTop, buttonLayoutRight, buttonLayoutBottom);
+        labelMargins.set(labelParams.leftMargin, labelParams.topMargin, labelParams.rightMargin, labelParams.bottomMargin);
+        labelPlacer.place(labelAdapter, stageRect, topSpace, spotlightRect, buttonRect, labelMargins, labelRect);
 
-        label.layout(labelLayoutLeft, labelLayoutTop, labelLayoutRight, labelLayoutBottom);
+        label.layout(labelRect.left, labelRect.top, labelRect.right, labelRect.bottom);
 
         spotlightLayoutLeft += spotlightParams.leftMargin;
         spotlightLayoutTop += spotlightParams.topMargin;
@@ -273,64 +447,276 @@ public class Stage extends ViewGroup implements View.OnTouchListener {
         button.layout(buttonLayoutLeft, buttonLayoutTop, buttonLayoutRight, buttonLayoutBottom);
     }
 
-    private int measureLabel(int width) {
-        if (width < 1)
-            return Integer.MAX_VALUE;
-        width = MeasureSpec.makeMeasureSpec(width, MeasureSpec.AT_MOST);
-        int height = MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED);
-        label.measure(width, height);
-        Logv("measureLabel: %dx%d", label.getMeasuredWidth(), label.getMeasuredHeight());
-        return label.getMeasuredHeight();
+    public LabelPlacer getLabelPlacer() {
+        return labelPlacer;
+    }
+
+    public void setLabelPlacer(LabelPlacer labelPlacer) {
+        this.labelPlacer = labelPlacer;
+        requestLayout();
+    }
+
+    private class LabelAdapter implements LabelPlacer.Label {
+        @Override
+        public int measure(int width) {
+            if (width < 1)
+                return Integer.MAX_VALUE;
+            width = MeasureSpec.makeMeasureSpec(width, MeasureSpec.AT_MOST);
+            int height = MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED);
+            label.measure(width, height);
+            Logv("measureLabel: %dx%d", label.getMeasuredWidth(), label.getMeasuredHeight());
+            return label.getMeasuredHeight();
+        }
+
+        @Override
+        public void measureWithin(int width, int height) {
+            label.measure(MeasureSpec.makeMeasureSpec(Math.max(width, 0), MeasureSpec.AT_MOST),
+                    MeasureSpec.makeMeasureSpec(Math.max(height, 0), MeasureSpec.AT_MOST));
+        }
+
+        @Override
+        public int getMeasuredWidth() {
+            return label.getMeasuredWidth();
+        }
+
+        @Override
+        public int getMeasuredHeight() {
+            return label.getMeasuredHeight();
+        }
+    }
+
+    void prefetchImage(int image) {
+        ImageLoader.getInstance().prefetch(getContext(), image, imageWidth, imageHeight);
     }
 
-    void updateChildViews() {
+    // Binds the scene to the children, inflating only layouts that changed and
+    // touching only properties whose values differ from the bound ones. Returns
+    // true if anything that affects the children's size or position changed.
+    boolean updateChildViews() {
+        // A stage kept between tours keeps its last children until the next scene is bound.
+        if (scene == null && (spotlight != null || flatScene))
+            return false;
+        if (canRenderFlat())
+            return bindFlat();
+        boolean changed = false;
+        if (flatScene) {
+            leaveFlat();
+            changed = true;
+        }
         int nextLayout = scene == null ? -1 : scene.getSpotlightLayout();
         if (nextLayout == -1)
             nextLayout = spotlightLayout;
-        spotlight = (Spotlight) updateChildView(0, spotlight, curSpotlightLayout, nextLayout);
-        curSpotlightLayout = nextLayout;
+        if (nextLayout != curSpotlightLayout) {
+            spotlight = (Spotlight) updateChildView(0, spotlight, curSpotlightLayout, nextLayout);
+            curSpotlightLayout = nextLayout;
+            changed = true;
+        }
 
         nextLayout = scene == null ? -1 : scene.getLabelLayout();
         if (nextLayout == -1)
             nextLayout = labelLayout;
-        label = updateChildView(1, label, curLabelLayout, nextLayout);
-        curLabelLayout = nextLayout;
+        if (nextLayout != curLabelLayout) {
+            label = updateChildView(1, label, curLabelLayout, nextLayout);
+            curLabelLayout = nextLayout;
+            titleTextView = (TextView) label.findViewById(R.id.spotlightTitleText);
+            detailView = label.findViewById(R.id.spotlightDetailText);
+            imageView = (ImageView) label.findViewById(R.id.spotlightImage);
+            boundTitle = null;
+            boundDetail = null;
+            boundImage = -1;
+            changed = true;
+        }
 
         nextLayout = scene == null ? -1 : scene.getButtonLayout();
         if (nextLayout == -1)
             nextLayout = buttonLayout;
-        button = (Button) updateChildView(2, button, curButtonLayout, nextLayout);
-        if (curButtonLayout != nextLayout)
+        if (nextLayout != curButtonLayout) {
+            button = (Button) updateChildView(2, button, curButtonLayout, nextLayout);
+            curButtonLayout = nextLayout;
             origButtonText = button.getText();
-        curButtonLayout = nextLayout;
+            boundButtonText = origButtonText;
+            button.setOnClickListener(buttonListener);
+            changed = true;
+        }
         if (scene != null) {
-            CharSequence buttonText = scene.getButtonText();
-            if (buttonText != null)
+            CharSequence buttonText = scene.getButtonText(getContext());
+            if (buttonText == null)
+                buttonText = origButtonText;
+            if (!isSameText(buttonText, boundButtonText)) {
                 button.setText(buttonText);
-            CharSequence titleText = scene.getTitleText();
-            CharSequence detailText = scene.getDetailText();
+                boundButtonText = buttonText;
+                changed = true;
+            }
+            CharSequence titleText = scene.getTitleText(getContext());
+            CharSequence detailText = scene.getDetailText(getContext());
             int labelVisibility = GONE;
-            TextView titleTextView = (TextView) label.findViewById(R.id.spotlightTitleText);
             if (titleTextView != null) {
                 if (titleText != null) {
-                    titleTextView.setText(titleText);
-                    titleTextView.setVisibility(VISIBLE);
+                    if (!isSameText(titleText, boundTitle)) {
+                        titleTextView.setText(titleText);
+                        boundTitle = titleText;
+                        changed = true;
+                    }
                     labelVisibility = VISIBLE;
-                } else
-                    titleTextView.setVisibility(GONE);
+                }
+                changed |= setChildVisibility(titleTextView, titleText != null ? VISIBLE : GONE);
             }
-            TextView detailTextView = (TextView) label.findViewById(R.id.spotlightDetailText);
-            if (detailTextView != null) {
+            if (detailView != null) {
                 if (detailText != null) {
-                detailTextView.setText(detailText);
-                detailTextView.setVisibility(VISIBLE);
-                labelVisibility = VISIBLE;
-                } else
-                    detailTextView.setVisibility(GONE);
+                    if (!isSameText(detailText, boundDetail)) {
+                        setDetailText(detailText);
+                        boundDetail = detailText;
+                        changed = true;
+                    }
+                    labelVisibility = VISIBLE;
+                }
+                changed |= setChildVisibility(detailView, detailText != null ? VISIBLE : GONE);
             }
-            label.setVisibility(labelVisibility);
-            button.setVisibility(VISIBLE);
+            if (imageView != null) {
+                int image = scene.getImage();
+                if (image != boundImage) {
+                    if (image != -1)
+                        ImageLoader.getInstance().bind(imageView, image, imageWidth, imageHeight);
+                    else
+                        ImageLoader.getInstance().unbind(imageView);
+                    boundImage = image;
+                    changed = true;
+                }
+                if (image != -1)
+                    labelVisibility = VISIBLE;
+                changed |= setChildVisibility(imageView, image != -1 ? VISIBLE : GONE);
+            }
+            changed |= setChildVisibility(label, labelVisibility);
+            changed |= setChildVisibility(button, VISIBLE);
+        }
+        return changed;
+    }
+
+    // The detail view is a TextView, or a ChunkedTextView for long text.
+    private void setDetailText(CharSequence text) {
+        if (detailView instanceof ChunkedTextView)
+            ((ChunkedTextView) detailView).setText(text);
+        else
+            ((TextView) detailView).setText(text);
+    }
+
+    // TextUtils.equals() compares characters only, so text that differs just
+    // in its spans would never be rebound. Styled text counts as unchanged
+    // only when it is the same object.
+    static boolean isSameText(CharSequence a, CharSequence b) {
+        if (a == b)
+            return true;
+        return a instanceof String && b instanceof String && a.equals(b);
+    }
+
+    private static boolean setChildVisibility(View child, int visibility) {
+        if (child.getVisibility() == visibility)
+            return false;
+        child.setVisibility(visibility);
+        return true;
+    }
+
+    private boolean bindFlat() {
+        boolean changed = !flatScene;
+        if (!flatScene) {
+            Logv("switch to flat rendering");
+            removeAllViews();
+            spotlight = null;
+            label = null;
+            button = null;
+            titleTextView = null;
+            detailView = null;
+            imageView = null;
+            curSpotlightLayout = curLabelLayout = curButtonLayout = -1;
+            if (flat == null)
+                flat = new FlatRenderer(getContext());
+            flat.setScrimColor(scrimColor);
+            // The scrim is drawn around the spotlight, so there is no background.
+            setBackgroundColor(0);
+            flatScene = true;
+            surfaceScene = surfaceRendering;
+            if (surfaceScene) {
+                if (surfaceView == null)
+                    surfaceView = new SurfaceStageView(getContext());
+                surfaceView.setScrimColor(scrimColor);
+                surfaceView.setPulseEnabled(pulseEnabled);
+                addView(surfaceView);
+            } else
+                setWillNotDraw(false);
         }
+        if (surfaceScene) {
+            // Text is bound to a fresh renderer when the scene is laid out.
+            surfaceSceneChanged = true;
+            return true;
+        }
+        if (scene == null)
+            changed |= flat.setText(null, null, null);
+        else
+            changed |= flat.setText(scene.getTitleText(getContext()), scene.getDetailText(getContext()),
+                    scene.getButtonText(getContext()));
+        if (flat.setButtonPressed(false) || changed)
+            invalidate();
+        return changed;
+    }
+
+    private void leaveFlat() {
+        removeAllViews();
+        flatScene = false;
+        surfaceScene = false;
+        setWillNotDraw(true);
+        setBackgroundColor(scrimColor);
+    }
+
+    private void layoutFlat() {
+        placeSpotlight(flat);
+        flat.layout(labelPlacer, getMeasuredWidth(), getMeasuredHeight(), getVisibleTop());
+        invalidate();
+    }
+
+    // Lays the scene out in a renderer of its own and hands that to the render
+    // thread; a relayout of the same scene replaces it without a crossfade.
+    private void layoutSurface() {
+        int myWidth = getMeasuredWidth();
+        int myHeight = getMeasuredHeight();
+        surfaceView.measure(MeasureSpec.makeMeasureSpec(myWidth, MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(myHeight, MeasureSpec.EXACTLY));
+        surfaceView.layout(0, 0, myWidth, myHeight);
+        FlatRenderer renderer = surfaceView.obtainRenderer();
+        if (scene == null)
+            renderer.setText(null, null, null);
+        else
+            renderer.setText(scene.getTitleText(getContext()), scene.getDetailText(getContext()),
+                    scene.getButtonText(getContext()));
+        placeSpotlight(renderer);
+        renderer.layout(labelPlacer, myWidth, myHeight, getVisibleTop());
+        surfaceView.show(renderer, surfaceSceneChanged ? surfaceTransitionTime : 0);
+        surfaceSceneChanged = false;
+    }
+
+    private void placeSpotlight(FlatRenderer renderer) {
+        Point spotlightPosition = null;
+        Actor actor = shownActor;
+        if (actor != null)
+            spotlightPosition = actor.getPosition();
+        if (spotlightPosition == null)
+            renderer.clearSpotlight();
+        else if (getActorShape(actor) == Spotlight.CIRCLE)
+            renderer.setSpotlight(Spotlight.CIRCLE, spotlightPosition.x, spotlightPosition.y, actor.getRadius(), actor.getRadius());
+        else {
+            ShapedActor shaped = (ShapedActor) actor;
+            renderer.setSpotlight(shaped.getShape(), spotlightPosition.x, spotlightPosition.y, shaped.getHalfWidth(), shaped.getHalfHeight());
+        }
+    }
+
+    // Actors that don't implement ShapedActor are lit by a circle.
+    private static int getActorShape(Actor actor) {
+        return actor instanceof ShapedActor ? ((ShapedActor) actor).getShape() : Spotlight.CIRCLE;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (flatScene && !surfaceScene)
+            flat.draw(canvas);
     }
 
     View updateChildView(int index, View prev, int prevID, int nextID) {
@@ -344,20 +730,66 @@ public class Stage extends ViewGroup implements View.OnTouchListener {
 
     public void show() {
         setVisibility(VISIBLE);
-        updateChildViews();
-        if (scene != null && scene.getActor() != null)
-            scene.getActor().show(this);
+        if (!prepared)
+            updateChildViews();
+        showActor(scene == null ? null : scene.getActor());
         setOnTouchListener(this);
         requestLayout();
+        prepared = false;
+    }
+
+    // Inflates and binds scene while the stage is hidden, and measures the
+    // children at the size the stage will be shown at, so showing it later only
+    // places them. Placement waits for show(), as it depends on where the actor
+    // is at the time.
+    void prepare(Script.Scene scene, int width, int height) {
+        this.scene = scene;
+        updateChildViews();
+        if (flatScene) {
+            // Surface scenes are laid out in a fresh renderer on show.
+            if (!surfaceScene)
+                flat.premeasure(width);
+        } else if (width > 0 && height > 0) {
+            measure(MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY),
+                    MeasureSpec.makeMeasureSpec(height, MeasureSpec.EXACTLY));
+            int unspecified = MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED);
+            button.measure(unspecified, unspecified);
+            spotlight.measure(unspecified, unspecified);
+            // The placer's first measurement, which the label then has cached.
+            MarginLayoutParams labelParams = (MarginLayoutParams) label.getLayoutParams();
+            labelAdapter.measure(width - labelParams.leftMargin - labelParams.rightMargin);
+        }
+        prepared = true;
+    }
+
+    boolean isPreparedFor(Script.Scene scene) {
+        return prepared && this.scene == scene;
     }
 
     public void hide() {
+        prepared = false;
         setVisibility(GONE);
-        if (scene != null && scene.getActor() != null)
-            scene.getActor().hide();
+        if (surfaceScene)
+            surfaceView.show(null, 0);
+        if (spotlight != null)
+            spotlight.stopPulse();
+        showActor(null);
         setOnTouchListener(null);
     }
 
+    // A ViewActor keeps where its view is, and the listener following it, for
+    // the stage showing it. Scenes can be shared by Scripts showing at once, so
+    // each stage shows a copy of its own rather than the scene's actor.
+    private void showActor(Actor actor) {
+        if (shownActor != null)
+            shownActor.hide();
+        if (actor instanceof ViewActor)
+            actor = ((ViewActor) actor).copy();
+        shownActor = actor;
+        if (actor != null)
+            actor.show(this);
+    }
+
     @Override
     protected boolean checkLayoutParams(ViewGroup.LayoutParams p) {
         return p instanceof MarginLayoutParams;
@@ -380,23 +812,122 @@ public class Stage extends ViewGroup implements View.OnTouchListener {
 
     public void setScene(Script.Scene scene) {
         Script.Scene prev = this.scene;
+        if (scene == prev)
+            return;
+        prepared = false;
         this.scene = scene;
         if (getVisibility() == VISIBLE) {
-            if (prev != null && prev.getActor() != null) {
-                prev.getActor().hide();
-            }
-            updateChildViews();
-            if (scene != null && scene.getActor() != null)
-                scene.getActor().show(this);
-            requestLayout();
+            Actor prevActor = prev == null ? null : prev.getActor();
+            Actor actor = scene == null ? null : scene.getActor();
+            boolean actorChanged = actor != prevActor;
+            boolean changed = updateChildViews();
+            if (actorChanged)
+                showActor(actor);
+            // Text views request their own layout when their size changes, but
+            // the label is placed from here.
+            if (changed || actorChanged)
+                requestLayout();
+        }
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        if (cache == null) {
+            super.draw(canvas);
+            return;
         }
+        int width = getWidth();
+        int height = getHeight();
+        if (width <= 0 || height <= 0)
+            return;
+        if (!cache.isValid(width, height)) {
+            super.draw(cache.begin(width, height));
+            cache.end();
+        }
+        cache.draw(canvas);
+    }
+
+    @Override
+    protected boolean onSetAlpha(int alpha) {
+        // The pooled bitmap is blitted with the fade's alpha, sparing the
+        // parent a screen-sized saveLayerAlpha() each frame.
+        if (cache == null)
+            return super.onSetAlpha(alpha);
+        cache.setAlpha(alpha);
+        return true;
+    }
+
+    @Override
+    public void invalidate() {
+        if (cache != null)
+            cache.invalidate();
+        super.invalidate();
+    }
+
+    @Override
+    public void invalidate(Rect dirty) {
+        if (cache != null)
+            cache.invalidate();
+        super.invalidate(dirty);
+    }
+
+    @Override
+    public void invalidate(int l, int t, int r, int b) {
+        if (cache != null)
+            cache.invalidate();
+        super.invalidate(l, t, r, b);
+    }
+
+    @Override
+    public ViewParent invalidateChildInParent(int[] location, Rect dirty) {
+        if (cache != null)
+            cache.invalidate();
+        return super.invalidateChildInParent(location, dirty);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (cache != null)
+            cache.release();
     }
 
     @Override
     public boolean onTouch(View v, MotionEvent event) {
+        if (flatScene)
+            onFlatTouch(event);
         return true;
     }
 
+    private void onFlatTouch(MotionEvent event) {
+        boolean inButton = surfaceScene ? surfaceView.hitButton(event.getX(), event.getY()) :
+                flat.hitButton(event.getX(), event.getY());
+        boolean pressed = false;
+        // getActionMasked() arrived in API 8.
+        int action = event.getAction() & MotionEvent.ACTION_MASK;
+        switch (action) {
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_MOVE:
+                pressed = inButton && (action == MotionEvent.ACTION_DOWN || isPressed());
+                setPressed(pressed);
+                break;
+            case MotionEvent.ACTION_UP:
+                if (inButton && isPressed() && buttonListener != null) {
+                    playSoundEffect(SoundEffectConstants.CLICK);
+                    buttonListener.onClick(this);
+                }
+                setPressed(false);
+                break;
+            case MotionEvent.ACTION_CANCEL:
+                setPressed(false);
+                break;
+        }
+        if (surfaceScene)
+            surfaceView.setButtonPressed(isPressed());
+        else if (flat.setButtonPressed(isPressed()))
+            invalidate(flat.getButtonBounds());
+    }
+
     private static final void Logd(String text, Object... args) {
         if (debug) {
             if (args != null && args.length > 0)
@@ -0,0 +1,112 @@
+/**
+ Copyright 2013 Andrew Mahone
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package us.looking_glass.spotlight;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.view.ViewParent;
+import android.widget.FrameLayout;
+
+import us.looking_glass.spotlight.draw.PooledDrawingCache;
+
+// Container for a Script's stages. Before Honeycomb it renders through a pooled
+// offscreen bitmap, which keeps the spotlight's DST_OUT hole from clearing the
+// activity's window.
+class StageFrame extends FrameLayout {
+    private PooledDrawingCache cache = null;
+
+    public StageFrame(Context context) {
+        super(context);
+    }
+
+    void setPooledCacheEnabled(boolean enabled) {
+        if (enabled && cache == null) {
+            cache = new PooledDrawingCache();
+        } else if (!enabled && cache != null) {
+            cache.release();
+            cache = null;
+        }
+        invalidate();
+    }
+
+    int getCacheMemoryBytes() {
+        return cache == null ? 0 : cache.getMemoryBytes();
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        if (cache == null) {
+            super.draw(canvas);
+            return;
+        }
+        int width = getWidth();
+        int height = getHeight();
+        if (width <= 0 || height <= 0)
+            return;
+        if (!cache.isValid(width, height)) {
+            super.draw(cache.begin(width, height));
+            cache.end();
+        }
+        cache.draw(canvas);
+    }
+
+    @Override
+    protected boolean onSetAlpha(int alpha) {
+        // The pooled bitmap is blitted with the fade's alpha, sparing the
+        // parent a screen-sized saveLayerAlpha() each frame.
+        if (cache == null)
+            return super.onSetAlpha(alpha);
+        cache.setAlpha(alpha);
+        return true;
+    }
+
+    @Override
+    public void invalidate() {
+        if (cache != null)
+            cache.invalidate();
+        super.invalidate();
+    }
+
+    @Override
+    public void invalidate(Rect dirty) {
+        if (cache != null)
+            cache.invalidate();
+        super.invalidate(dirty);
+    }
+
+    @Override
+    public void invalidate(int l, int t, int r, int b) {
+        if (cache != null)
+            cache.invalidate();
+        super.invalidate(l, t, r, b);
+    }
+
+    @Override
+    public ViewParent invalidateChildInParent(int[] location, Rect dirty) {
+        if (cache != null)
+            cache.invalidate();
+        return super.invalidateChildInParent(location, dirty);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (cache != null)
+            cache.release();
+    }
+}
@@ -0,0 +1,368 @@
+/**
+ Copyright 2013 Andrew Mahone
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package us.looking_glass.spotlight;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.PixelFormat;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import us.looking_glass.spotlight.draw.Spotlight;
+
+// Shows flat scenes in a surface of its own, composited above the window by the
+// system, from a render thread. The UI thread lays each scene out in a
+// FlatRenderer and hands it over with show(); from then on only the render
+// thread touches it, drawing crossfades, fade outs and the spotlight pulse, so
+// they keep their frame rate while the main thread is busy. Renderers the
+// render thread is done with come back through obtainRenderer().
+final class SurfaceStageView extends SurfaceView implements SurfaceHolder.Callback, Runnable {
+    private final static String TAG = SurfaceStageView.class.getSimpleName();
+    final static boolean debug = false;
+    private static final int PULSE_DURATION = 1000;
+
+    private final Object lock = new Object();
+    // Held by the render thread while it draws, so surfaceDestroyed() can wait
+    // for the frame in progress.
+    private final Object surfaceLock = new Object();
+    private final List<FlatRenderer> spare = new ArrayList<FlatRenderer>(2);
+    private final Rect buttonBounds = new Rect();
+    private Thread thread = null;
+    private int scrimColor = 0;
+
+    // Guarded by lock.
+    private FlatRenderer pending = null;
+    private boolean replace = false;
+    private int pendingDuration = 0;
+    private int fadeOutDuration = -1;
+    private Runnable fadeOutEnd = null;
+    private boolean pressed = false;
+    private boolean pulseEnabled = true;
+    private boolean dirty = false;
+    private boolean quit = false;
+    private volatile boolean surfaceReady = false;
+
+    private final Runnable fadeOutDone = new Runnable() {
+        @Override
+        public void run() {
+            Runnable end;
+            synchronized (lock) {
+                end = fadeOutEnd;
+                fadeOutEnd = null;
+            }
+            if (end != null)
+                end.run();
+        }
+    };
+
+    SurfaceStageView(Context context) {
+        super(context);
+        setZOrderOnTop(true);
+        getHolder().setFormat(PixelFormat.TRANSLUCENT);
+        getHolder().addCallback(this);
+    }
+
+    void setScrimColor(int scrimColor) {
+        this.scrimColor = scrimColor;
+    }
+
+    // A renderer for the UI thread to lay the next scene out in.
+    FlatRenderer obtainRenderer() {
+        FlatRenderer result = null;
+        synchronized (lock) {
+            if (!spare.isEmpty())
+                result = spare.remove(spare.size() - 1);
+        }
+        if (result == null)
+            result = new FlatRenderer(getContext());
+        result.setScrimColor(scrimColor);
+        result.setButtonPressed(false);
+        result.setSpotlightScale(1);
+        return result;
+    }
+
+    // Hands renderer, laid out, to the render thread, which crossfades to it
+    // over duration milliseconds. A null renderer clears the surface.
+    void show(FlatRenderer renderer, int duration) {
+        if (renderer == null)
+            buttonBounds.setEmpty();
+        else
+            buttonBounds.set(renderer.getButtonBounds());
+        synchronized (lock) {
+            if (pending != null)
+                spare.add(pending);
+            pending = renderer;
+            replace = true;
+            pendingDuration = duration;
+            fadeOutDuration = -1;
+            fadeOutEnd = null;
+            pressed = false;
+            dirty = true;
+            lock.notify();
+        }
+    }
+
+    // Fades the current scene out, then runs end on the UI thread unless
+    // show() or cancelFadeOut() is called first.
+    void fadeOut(int duration, Runnable end) {
+        buttonBounds.setEmpty();
+        synchronized (lock) {
+            fadeOutDuration = duration;
+            fadeOutEnd = end;
+            dirty = true;
+            lock.notify();
+        }
+    }
+
+    void cancelFadeOut() {
+        synchronized (lock) {
+            fadeOutEnd = null;
+        }
+    }
+
+    boolean hitButton(float x, float y) {
+        return buttonBounds.contains((int) x, (int) y);
+    }
+
+    void setButtonPressed(boolean pressed) {
+        synchronized (lock) {
+            if (pressed == this.pressed)
+                return;
+            this.pressed = pressed;
+            dirty = true;
+            lock.notify();
+        }
+    }
+
+    void setPulseEnabled(boolean pulseEnabled) {
+        synchronized (lock) {
+            if (pulseEnabled == this.pulseEnabled)
+                return;
+            this.pulseEnabled = pulseEnabled;
+            dirty = true;
+            lock.notify();
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        synchronized (lock) {
+            quit = false;
+        }
+        thread = new Thread(this, TAG);
+        thread.start();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        synchronized (lock) {
+            quit = true;
+            lock.notify();
+        }
+        boolean interrupted = false;
+        while (thread != null) {
+            try {
+                thread.join();
+                thread = null;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        Logv("surface created");
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        Logv("surface changed: %dx%d", width, height);
+        synchronized (lock) {
+            surfaceReady = true;
+            dirty = true;
+            lock.notify();
+        }
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        Logv("surface destroyed");
+        synchronized (lock) {
+            surfaceReady = false;
+            // A fade out in progress ends now; see run().
+            lock.notify();
+        }
+        synchronized (surfaceLock) {
+            // The render thread has finished any frame it was drawing.
+        }
+    }
+
+    @Override
+    public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_DISPLAY);
+        SurfaceHolder holder = getHolder();
+        FlatRenderer front = null;
+        FlatRenderer back = null;
+        boolean fadingOut = false;
+        boolean animating = false;
+        long fadeStart = 0;
+        int fadeDuration = 0;
+        long pulseStart = 0;
+        while (true) {
+            boolean buttonPressed;
+            boolean pulse;
+            synchronized (lock) {
+                // Without a surface only a fade out has anything left to do.
+                while (!quit && !(surfaceReady ? dirty || animating : fadingOut || fadeOutDuration >= 0)) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        quit = true;
+                    }
+                }
+                if (quit)
+                    break;
+                dirty = false;
+                long now = SystemClock.uptimeMillis();
+                if (replace) {
+                    replace = false;
+                    if (pendingDuration > 0 && front != null) {
+                        if (back != null)
+                            spare.add(back);
+                        back = front;
+                        fadeStart = now;
+                        fadeDuration = pendingDuration;
+                    } else if (front != null)
+                        spare.add(front);
+                    else if (pendingDuration > 0) {
+                        fadeStart = now;
+                        fadeDuration = pendingDuration;
+                    }
+                    if (pending != null && (front == null || fadingOut))
+                        pulseStart = now;
+                    front = pending;
+                    pending = null;
+                    fadingOut = false;
+                }
+                if (fadeOutDuration >= 0) {
+                    if (back != null)
+                        spare.add(back);
+                    back = null;
+                    fadingOut = true;
+                    fadeStart = now;
+                    fadeDuration = fadeOutDuration;
+                    fadeOutDuration = -1;
+                }
+                buttonPressed = pressed;
+                pulse = pulseEnabled;
+            }
+
+            long now = SystemClock.uptimeMillis();
+            float fraction = fadeDuration > 0 ? Math.min(1f, (now - fadeStart) / (float) fadeDuration) : 1f;
+            boolean pulsing = pulse && front != null && !fadingOut && front.hasSpotlight() && front.getPulseScale() != 0 &&
+                    now - pulseStart < PULSE_DURATION * 2 * Spotlight.PULSE_CYCLES;
+            if (front != null) {
+                float scale = 1;
+                if (pulsing) {
+                    // Grows for one period and shrinks for the next, like the view pulse.
+                    float phase = ((now - pulseStart) % (PULSE_DURATION * 2)) / (float) PULSE_DURATION;
+                    scale += front.getPulseScale() * (1 - (float) Math.cos(Math.PI * phase)) / 2;
+                }
+                front.setSpotlightScale(scale);
+                front.setButtonPressed(buttonPressed && !fadingOut);
+            }
+            boolean drawn = false;
+            synchronized (surfaceLock) {
+                Canvas canvas = surfaceReady ? holder.lockCanvas() : null;
+                if (canvas != null) {
+                    try {
+                        canvas.drawColor(0, PorterDuff.Mode.CLEAR);
+                        if (fadingOut)
+                            drawFaded(canvas, front, 1 - fraction);
+                        else {
+                            drawFaded(canvas, back, 1 - fraction);
+                            drawFaded(canvas, front, fraction);
+                        }
+                    } finally {
+                        holder.unlockCanvasAndPost(canvas);
+                    }
+                    drawn = true;
+                }
+            }
+            if (!drawn) {
+                if (!fadingOut)
+                    continue;
+                // There is nothing left to fade, and the end may not wait for a
+                // surface that might never come back.
+                Logv("no surface, ending fade out");
+                fraction = 1;
+            }
+            if (fraction >= 1) {
+                fadeDuration = 0;
+                synchronized (lock) {
+                    if (back != null)
+                        spare.add(back);
+                    back = null;
+                    if (fadingOut) {
+                        Logv("fade out complete");
+                        if (front != null)
+                            spare.add(front);
+                        front = null;
+                        fadingOut = false;
+                        post(fadeOutDone);
+                    }
+                }
+            }
+            animating = fadeDuration > 0 || pulsing;
+        }
+        Logv("render thread done");
+    }
+
+    private static void drawFaded(Canvas canvas, FlatRenderer renderer, float alpha) {
+        if (renderer == null || alpha <= 0)
+            return;
+        if (alpha >= 1) {
+            renderer.draw(canvas);
+            return;
+        }
+        int saveCount = canvas.saveLayerAlpha(0, 0, canvas.getWidth(), canvas.getHeight(),
+                Math.round(alpha * 255), Canvas.ALL_SAVE_FLAG);
+        renderer.draw(canvas);
+        canvas.restoreToCount(saveCount);
+    }
+
+    private static final void Logv(String text, Object... args) {
+        if (debug) {
+            if (args != null && args.length > 0)
+                text = String.format(text, args);
+            Log.v(TAG, text);
+        }
+    }
+}
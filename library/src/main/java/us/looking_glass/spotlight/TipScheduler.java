@@ -0,0 +1,275 @@
+/**
+ Copyright 2013 Andrew Mahone
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package us.looking_glass.spotlight;
+
+import android.app.Activity;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+
+// Process-wide queue of tours started with Script.schedule(). Only one tour is
+// on screen at a time, whether it was scheduled or shown directly; the highest
+// priority waiting tour starts once the current one is hidden, subject to a
+// per-process tour limit and a minimum gap between tours. A tour also waits
+// until its Activity's window has drawn nothing for QUIET_PERIOD and the main
+// thread goes idle, so it doesn't start in the middle of a scroll, an
+// animation or the Activity's own startup. Must be used from the main thread.
+public final class TipScheduler {
+    private final static String TAG = TipScheduler.class.getSimpleName();
+    final static boolean debug = false;
+    private static final long QUIET_PERIOD = 250;
+    private static TipScheduler instance = null;
+
+    private final PriorityQueue<Entry> queue = new PriorityQueue<Entry>(8, new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) {
+            if (a.priority != b.priority)
+                return a.priority > b.priority ? -1 : 1;
+            return a.sequence < b.sequence ? -1 : a.sequence == b.sequence ? 0 : 1;
+        }
+    });
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private Script current = null;
+    private long sequence = 0;
+    private int shownCount = 0;
+    private int maxToursPerSession = Integer.MAX_VALUE;
+    private long minInterval = 0;
+    private long lastHiddenUptime = -1;
+    private View watchedView = null;
+    private long lastDrawUptime = 0;
+    private boolean checkPosted = false;
+    private boolean idleQueued = false;
+
+    private static class Entry {
+        final Script script;
+        final int priority;
+        final boolean showAll;
+        final long sequence;
+
+        Entry(Script script, int priority, boolean showAll, long sequence) {
+            this.script = script;
+            this.priority = priority;
+            this.showAll = showAll;
+            this.sequence = sequence;
+        }
+    }
+
+    private final ViewTreeObserver.OnPreDrawListener preDrawListener = new ViewTreeObserver.OnPreDrawListener() {
+        @Override
+        public boolean onPreDraw() {
+            lastDrawUptime = SystemClock.uptimeMillis();
+            return true;
+        }
+    };
+
+    private final Runnable check = new Runnable() {
+        @Override
+        public void run() {
+            checkPosted = false;
+            checkQuiet();
+        }
+    };
+
+    private final MessageQueue.IdleHandler idle = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            idleQueued = false;
+            startNext();
+            return false;
+        }
+    };
+
+    public static TipScheduler getInstance() {
+        if (instance == null)
+            instance = new TipScheduler();
+        return instance;
+    }
+
+    private TipScheduler() {}
+
+    public int getMaxToursPerSession() {
+        return maxToursPerSession;
+    }
+
+    // Tours shown in this process, scheduled or not, after which scheduled
+    // tours are no longer started.
+    public void setMaxToursPerSession(int maxToursPerSession) {
+        this.maxToursPerSession = maxToursPerSession;
+        schedule();
+    }
+
+    public long getMinInterval() {
+        return minInterval;
+    }
+
+    // Milliseconds between one tour being hidden and a scheduled one starting.
+    public void setMinInterval(long minInterval) {
+        this.minInterval = minInterval;
+        schedule();
+    }
+
+    public int getShownCount() {
+        return shownCount;
+    }
+
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    void enqueue(Script script, int priority, boolean showAll) {
+        removeEntry(script);
+        queue.add(new Entry(script, priority, showAll, sequence++));
+        Logv("enqueue %s priority %d, %d pending", script, priority, queue.size());
+        schedule();
+    }
+
+    void remove(Script script) {
+        if (removeEntry(script)) {
+            stopWatching();
+            schedule();
+        }
+    }
+
+    private boolean removeEntry(Script script) {
+        Iterator<Entry> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().script == script) {
+                iterator.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void onScriptShown(Script script) {
+        Logv("shown %s", script);
+        current = script;
+        shownCount++;
+        removeEntry(script);
+        stopWatching();
+    }
+
+    void onScriptHidden(Script script) {
+        if (script != current)
+            return;
+        Logv("hidden %s", script);
+        current = null;
+        lastHiddenUptime = SystemClock.uptimeMillis();
+        schedule();
+    }
+
+    private void schedule() {
+        if (checkPosted || idleQueued || current != null || queue.isEmpty())
+            return;
+        if (shownCount >= maxToursPerSession) {
+            Logd("tour limit reached, %d tours waiting", queue.size());
+            return;
+        }
+        long delay = QUIET_PERIOD;
+        if (lastHiddenUptime >= 0)
+            delay = Math.max(delay, lastHiddenUptime + minInterval - SystemClock.uptimeMillis());
+        checkPosted = true;
+        handler.postDelayed(check, delay);
+    }
+
+    private void checkQuiet() {
+        if (current != null || queue.isEmpty()) {
+            stopWatching();
+            return;
+        }
+        Activity activity = queue.peek().script.getActivity();
+        if (activity == null) {
+            queue.poll();
+            schedule();
+            return;
+        }
+        if (watch(activity)) {
+            schedule();
+            return;
+        }
+        long quiet = SystemClock.uptimeMillis() - lastDrawUptime;
+        if (quiet < QUIET_PERIOD) {
+            checkPosted = true;
+            handler.postDelayed(check, QUIET_PERIOD - quiet);
+            return;
+        }
+        idleQueued = true;
+        Looper.myQueue().addIdleHandler(idle);
+    }
+
+    private void startNext() {
+        if (current != null || queue.isEmpty() || shownCount >= maxToursPerSession)
+            return;
+        if (SystemClock.uptimeMillis() - lastDrawUptime < QUIET_PERIOD) {
+            schedule();
+            return;
+        }
+        Entry entry = queue.poll();
+        stopWatching();
+        Logv("start %s", entry.script);
+        entry.script.show(entry.showAll);
+        // A tour with nothing left to display hides itself at once.
+        if (current == null)
+            schedule();
+    }
+
+    // Watches the window of the tour next in line for draws. Returns true if it
+    // just started watching, in which case the window counts as busy.
+    private boolean watch(Activity activity) {
+        View view = activity.getWindow().getDecorView();
+        if (view == watchedView)
+            return false;
+        stopWatching();
+        watchedView = view;
+        view.getViewTreeObserver().addOnPreDrawListener(preDrawListener);
+        lastDrawUptime = SystemClock.uptimeMillis();
+        return true;
+    }
+
+    private void stopWatching() {
+        if (watchedView == null)
+            return;
+        ViewTreeObserver observer = watchedView.getViewTreeObserver();
+        if (observer.isAlive())
+            observer.removeOnPreDrawListener(preDrawListener);
+        watchedView = null;
+    }
+
+    private static final void Logd(String text, Object... args) {
+        if (debug) {
+            if (args != null && args.length > 0)
+                text = String.format(text, args);
+            Log.d(TAG, text);
+        }
+    }
+
+    private static final void Logv(String text, Object... args) {
+        if (debug) {
+            if (args != null && args.length > 0)
+                text = String.format(text, args);
+            Log.v(TAG, text);
+        }
+    }
+}
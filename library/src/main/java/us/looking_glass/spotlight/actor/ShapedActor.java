@@ -0,0 +1,26 @@
+/**
+ Copyright 2013 Andrew Mahone
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package us.looking_glass.spotlight.actor;
+
+// An Actor whose spotlight need not be a circle. Stages check for it, so
+// Actors written against the plain interface keep a circle of getRadius().
+public interface ShapedActor extends Actor {
+    // One of Spotlight.CIRCLE, OVAL or ROUNDED_RECT.
+    int getShape();
+    float getHalfWidth();
+    float getHalfHeight();
+}
@@ -24,37 +24,76 @@ import android.os.Build;
 import android.util.Log;
 import android.view.View;
 
+import java.lang.ref.WeakReference;
 import java.sql.BatchUpdateException;
 
 import us.looking_glass.spotlight.Stage;
+import us.looking_glass.spotlight.draw.Spotlight;
 
-public class ViewActor implements Actor {
+public class ViewActor implements ShapedActor {
     private final static String TAG = ViewActor.class.getSimpleName();
     final static boolean debug = true;
-    private final Context context;
     private Point center = new Point();
     private float radius = 0;
+    private float halfWidth = 0;
+    private float halfHeight = 0;
     private Stage host;
-    private final View view;
+    private WeakReference<View> viewRef;
+    private final int viewID;
     private final int spotlightPlacement;
     private final float spotlightSize;
     private final float innerPadding;
+    // Without one, the padding is 2dip on the host's display.
+    private final boolean hasInnerPadding;
+    private final int shape;
     private boolean dirty = true;
     public static final int AROUND = 1;
     public static final int INSIDE = 2;
     public static final int FIXED = 3;
     Object listener = null;
 
+    private static final float SQRT2 = (float) Math.sqrt(2);
+
     public ViewActor(Context context, View view, int placement, float size, float innerPadding) {
-        this.context = context;
-        this.view = view;
+        this(context, view, placement, size, innerPadding, Spotlight.CIRCLE);
+    }
+
+    public ViewActor(Context context, View view, int placement, float size, float innerPadding, int shape) {
+        this(view, View.NO_ID, placement, size, innerPadding, true, shape);
+    }
+
+    // Follows the view with id viewID in the Activity showing the actor, looked
+    // up each time the actor is shown, so one actor can serve every instance
+    // of that Activity.
+    public ViewActor(int viewID, int placement, float size, float innerPadding, int shape) {
+        this(null, viewID, placement, size, innerPadding, true, shape);
+    }
+
+    // As above, with the default inner padding of 2dip.
+    public ViewActor(int viewID, int placement, float size, int shape) {
+        this(null, viewID, placement, size, 0, false, shape);
+    }
+
+    private ViewActor(View view, int viewID, int placement, float size, float innerPadding, boolean hasInnerPadding, int shape) {
+        viewRef = new WeakReference<View>(view);
+        this.viewID = viewID;
         spotlightPlacement = placement;
         spotlightSize = size;
         this.innerPadding = innerPadding;
+        this.hasInnerPadding = hasInnerPadding;
+        this.shape = shape;
+    }
+
+    // An unshown actor with the same settings. Stages show a copy each, so one
+    // actor can serve several stages at once.
+    public ViewActor copy() {
+        return new ViewActor(viewID == View.NO_ID ? viewRef.get() : null, viewID,
+                spotlightPlacement, spotlightSize, innerPadding, hasInnerPadding, shape);
     }
 
     private void update() {
-        if (!dirty)
+        View view = viewRef.get();
+        if (!dirty || view == null)
             return;
         int[] hostOffset = new int[2];
         int[] targetOffset = new int[2];
@@ -65,29 +104,54 @@ public class ViewActor implements Actor {
         int x = targetOffset[0] - hostOffset[0] + targetWidth / 2;
         int y = targetOffset[1] - hostOffset[1] + targetHeight / 2;
         float size = 1;
+        float width = targetWidth / 2f;
+        float height = targetHeight / 2f;
+        float innerPadding = this.innerPadding;
+        if (!hasInnerPadding)
+            innerPadding = host.getResources().getDisplayMetrics().density * 2;
         switch (spotlightPlacement) {
             case AROUND:
                 size = (float) Math.sqrt(targetHeight * targetHeight + targetWidth * targetWidth) / 2;
                 size = size * spotlightSize + innerPadding;
+                // An oval through the target's corners has semi-axes sqrt(2) times its half extents.
+                if (shape == Spotlight.OVAL) {
+                    width *= SQRT2;
+                    height *= SQRT2;
+                }
+                width = width * spotlightSize + innerPadding;
+                height = height * spotlightSize + innerPadding;
                 break;
             case INSIDE:
-                size = Math.min(targetWidth, targetHeight) / 2 - host.getSpotlight().getBorder();
+                float border = host.getSpotlightBorder();
+                size = Math.min(targetWidth, targetHeight) / 2 - border;
                 size = size * spotlightSize - innerPadding;
+                width = (width - border) * spotlightSize - innerPadding;
+                height = (height - border) * spotlightSize - innerPadding;
                 break;
             case FIXED:
                 size = spotlightSize;
+                width = spotlightSize;
+                height = spotlightSize;
                 break;
         }
         center.x = x;
         center.y = y;
         radius = size;
-        Logv("Target size: %dx%d radius: %f", targetWidth, targetHeight, radius);
+        if (shape == Spotlight.CIRCLE) {
+            halfWidth = size;
+            halfHeight = size;
+        } else {
+            halfWidth = width;
+            halfHeight = height;
+        }
+        Logv("Target size: %dx%d radius: %f extent: %fx%f", targetWidth, targetHeight, radius, halfWidth, halfHeight);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB)
             dirty = false;
     }
 
     @Override
     public Point getPosition() {
+        View view = viewRef.get();
         if (view == null || view.getVisibility() == View.GONE)
             return null;
         update();
@@ -99,9 +163,32 @@ public class ViewActor implements Actor {
         return radius;
     }
 
+    @Override
+    public int getShape() {
+        return shape;
+    }
+
+    @Override
+    public float getHalfWidth() {
+        return halfWidth;
+    }
+
+    @Override
+    public float getHalfHeight() {
+        return halfHeight;
+    }
+
     @Override
     public void show(Stage host) {
         this.host = host;
+        // The view may have moved, or the host changed, while the actor was hidden.
+        dirty = true;
+        if (viewID != View.NO_ID) {
+            Context context = host.getContext();
+            View view = context instanceof Activity ? ((Activity) context).findViewById(viewID) : null;
+            if (view != viewRef.get())
+                viewRef = new WeakReference<View>(view);
+        }
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB)
             addListener();
     }
@@ -115,26 +202,40 @@ public class ViewActor implements Actor {
     }
 
     public static class Builder {
-        private final Context context;
         private View view = null;
+        private int viewID = View.NO_ID;
         private int spotlightPlacement = AROUND;
         private float spotlightSize = 1;
         private final float defaultInnerPadding;
+        // False while the padding is left for the host's display to decide.
+        private final boolean hasInnerPadding;
         private float innerPadding;
+        private int shape = Spotlight.CIRCLE;
+
+        // Builds actors that need no Context until they are shown.
+        public Builder() {
+            defaultInnerPadding = 0;
+            hasInnerPadding = false;
+            innerPadding = defaultInnerPadding;
+        }
 
         public Builder(Context context) {
-            this.context = context;
             defaultInnerPadding = context.getResources().getDisplayMetrics().density * 2;
+            hasInnerPadding = true;
             innerPadding = defaultInnerPadding;
+            shape = Spotlight.CIRCLE;
         }
 
         public Builder setView(View view) {
             this.view = view;
+            viewID = View.NO_ID;
             return this;
         }
 
+        // The view is found in the showing Activity when the actor is shown.
         public Builder setView(int id) {
-            this.view = ((Activity) context).findViewById(id);
+            view = null;
+            viewID = id;
             return this;
         }
 
@@ -148,15 +249,22 @@ public class ViewActor implements Actor {
             return this;
         }
 
+        public Builder setShape(int shape) {
+            this.shape = shape;
+            return this;
+        }
+
         public void clear() {
             view = null;
+            viewID = View.NO_ID;
             spotlightPlacement = AROUND;
             spotlightSize = 1;
             innerPadding = defaultInnerPadding;
+            shape = Spotlight.CIRCLE;
         }
 
         public Actor build() {
-            return new ViewActor(context, view, spotlightPlacement, spotlightSize, innerPadding);
+            return new ViewActor(view, viewID, spotlightPlacement, spotlightSize, innerPadding, hasInnerPadding, shape);
         }
     }
 
@@ -178,6 +286,7 @@ public class ViewActor implements Actor {
 
     @TargetApi(Build.VERSION_CODES.HONEYCOMB)
     private void addListener() {
+        View view = viewRef.get();
         if (host == null || view == null)
             return;
         listener = new View.OnLayoutChangeListener() {
@@ -194,6 +303,7 @@ public class ViewActor implements Actor {
 
     @TargetApi(Build.VERSION_CODES.HONEYCOMB)
     private void removeListener() {
+        View view = viewRef.get();
         if (host == null || view == null || listener == null)
             return;
         view.removeOnLayoutChangeListener((View.OnLayoutChangeListener) listener);
@@ -0,0 +1,86 @@
+/**
+ Copyright 2013 Andrew Mahone
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package us.looking_glass.spotlight.draw;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Small pool of full-screen ARGB bitmaps, keyed by size, used for offscreen
+// stage rendering on devices without view layers. Bitmaps go back to the pool
+// when a tour is hidden, so showing another tour does not allocate them again.
+public final class BitmapPool {
+    private final static String TAG = BitmapPool.class.getSimpleName();
+    final static boolean debug = false;
+    private static final int MAX_POOLED = 3;
+    private static BitmapPool instance = null;
+
+    private final List<Bitmap> pool = new ArrayList<Bitmap>(MAX_POOLED);
+
+    public static BitmapPool getInstance() {
+        if (instance == null)
+            instance = new BitmapPool();
+        return instance;
+    }
+
+    private BitmapPool() {}
+
+    public Bitmap get(int width, int height) {
+        for (int i = pool.size() - 1; i >= 0; i--) {
+            Bitmap bitmap = pool.get(i);
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
+                pool.remove(i);
+                Logv("reuse %dx%d", width, height);
+                return bitmap;
+            }
+        }
+        Logv("allocate %dx%d", width, height);
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    public void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled())
+            return;
+        if (pool.size() >= MAX_POOLED)
+            pool.remove(0).recycle();
+        pool.add(bitmap);
+    }
+
+    public int getSizeBytes() {
+        int result = 0;
+        for (Bitmap bitmap : pool)
+            result += bitmap.getRowBytes() * bitmap.getHeight();
+        return result;
+    }
+
+    public void clear() {
+        Logv("clear %d bitmaps", pool.size());
+        for (Bitmap bitmap : pool)
+            bitmap.recycle();
+        pool.clear();
+    }
+
+    private static final void Logv(String text, Object... args) {
+        if (debug) {
+            if (args != null && args.length > 0)
+                text = String.format(text, args);
+            Log.v(TAG, text);
+        }
+    }
+}
@@ -0,0 +1,423 @@
+/**
+ Copyright 2013 Andrew Mahone
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package us.looking_glass.spotlight.draw;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.os.Build;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.view.MotionEvent;
+import android.view.VelocityTracker;
+import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.ViewParent;
+import android.view.accessibility.AccessibilityEvent;
+import android.view.accessibility.AccessibilityNodeInfo;
+import android.widget.Scroller;
+
+import us.looking_glass.spotlight.R;
+
+// Shows long text one paragraph at a time, for detail text that won't fit on
+// screen. Each paragraph gets its own StaticLayout, made when it first scrolls
+// into view and kept until the width changes. Paragraphs not laid out yet
+// count at a height estimated from their length, so measuring doesn't depend
+// on the length of the text, and opening a long scene lays out one screenful.
+// The view fills the width it is offered and scrolls itself; when a paragraph
+// above the visible text turns out taller or shorter than its estimate, the
+// scroll position moves with it so the visible text stays put.
+public class ChunkedTextView extends View {
+    private final static String TAG = ChunkedTextView.class.getSimpleName();
+    final static boolean debug = false;
+    private static final int[] TEXT_APPEARANCE = {
+            android.R.attr.textSize, android.R.attr.textColor, android.R.attr.shadowColor, android.R.attr.shadowRadius };
+    private static final String SAMPLE_TEXT = "The quick brown fox jumps over the lazy dog.";
+
+    private final TextPaint paint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private float spacingMult = 1;
+    private float spacingAdd = 0;
+    private float charWidth;
+    private int lineHeight;
+    private CharSequence text = "";
+    private int count = 0;
+    private int[] starts = new int[0];
+    private int[] ends = new int[0];
+    private StaticLayout[] layouts = new StaticLayout[0];
+    private int[] heights = new int[0];
+    // tops[i] is where paragraph i starts; tops[count] is the text's height.
+    private int[] tops = new int[1];
+    private boolean topsValid = true;
+    private int layoutWidth = -1;
+
+    private final Scroller scroller;
+    private VelocityTracker velocityTracker = null;
+    private final int touchSlop;
+    private final int minFlingVelocity;
+    private final int maxFlingVelocity;
+    private float downY;
+    private float lastY;
+    private boolean dragging = false;
+
+    public ChunkedTextView(Context context) {
+        this(context, null);
+    }
+
+    public ChunkedTextView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public ChunkedTextView(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+        float scaledDensity = context.getResources().getDisplayMetrics().scaledDensity;
+        paint.setTextSize(15 * scaledDensity);
+        paint.setColor(0xffffffff);
+        TypedArray styled = context.obtainStyledAttributes(attrs, R.styleable.ChunkedTextView, defStyle, 0);
+        int appearance = styled.getResourceId(R.styleable.ChunkedTextView_android_textAppearance, -1);
+        if (appearance != -1)
+            applyTextAppearance(context, appearance);
+        paint.setTextSize(styled.getDimension(R.styleable.ChunkedTextView_android_textSize, paint.getTextSize()));
+        paint.setColor(styled.getColor(R.styleable.ChunkedTextView_android_textColor, paint.getColor()));
+        spacingAdd = styled.getDimension(R.styleable.ChunkedTextView_android_lineSpacingExtra, 0);
+        spacingMult = styled.getFloat(R.styleable.ChunkedTextView_android_lineSpacingMultiplier, 1);
+        CharSequence initialText = styled.getText(R.styleable.ChunkedTextView_android_text);
+        styled.recycle();
+        updateMetrics();
+        ViewConfiguration configuration = ViewConfiguration.get(context);
+        touchSlop = configuration.getScaledTouchSlop();
+        minFlingVelocity = configuration.getScaledMinimumFlingVelocity();
+        maxFlingVelocity = configuration.getScaledMaximumFlingVelocity();
+        scroller = new Scroller(context);
+        setWillNotDraw(false);
+        setText(initialText);
+    }
+
+    private void applyTextAppearance(Context context, int appearance) {
+        TypedArray styled = context.obtainStyledAttributes(appearance, TEXT_APPEARANCE);
+        paint.setTextSize(styled.getDimension(0, paint.getTextSize()));
+        paint.setColor(styled.getColor(1, paint.getColor()));
+        int shadowColor = styled.getColor(2, 0);
+        float shadowRadius = styled.getFloat(3, 0);
+        if (shadowRadius > 0)
+            paint.setShadowLayer(shadowRadius, 0, 0, shadowColor);
+        styled.recycle();
+    }
+
+    private void updateMetrics() {
+        charWidth = Math.max(1, paint.measureText(SAMPLE_TEXT) / SAMPLE_TEXT.length());
+        lineHeight = Math.round(paint.getFontMetricsInt(null) * spacingMult + spacingAdd);
+    }
+
+    public CharSequence getText() {
+        return text;
+    }
+
+    // Splits text into paragraphs at line breaks; none are laid out until drawn.
+    public void setText(CharSequence text) {
+        if (text == null)
+            text = "";
+        // Text differing only in its spans has to be laid out again, so only
+        // plain Strings are compared by content.
+        if (text == this.text || text instanceof String && text.equals(this.text))
+            return;
+        this.text = text;
+        int length = text.length();
+        int paragraphs = 1;
+        for (int i = TextUtils.indexOf(text, '\n'); i >= 0; i = TextUtils.indexOf(text, '\n', i + 1))
+            paragraphs++;
+        count = paragraphs;
+        starts = new int[count];
+        ends = new int[count];
+        int start = 0;
+        for (int i = 0; i < count; i++) {
+            int end = TextUtils.indexOf(text, '\n', start);
+            if (end < 0)
+                end = length;
+            starts[i] = start;
+            ends[i] = end;
+            start = end + 1;
+        }
+        layouts = new StaticLayout[count];
+        heights = new int[count];
+        tops = new int[count + 1];
+        layoutWidth = -1;
+        Logv("%d characters in %d paragraphs", length, count);
+        scroller.forceFinished(true);
+        scrollTo(0, 0);
+        requestLayout();
+        invalidate();
+    }
+
+    public float getTextSize() {
+        return paint.getTextSize();
+    }
+
+    public void setTextSize(float pixels) {
+        paint.setTextSize(pixels);
+        updateMetrics();
+        layoutWidth = -1;
+        requestLayout();
+        invalidate();
+    }
+
+    public void setTextColor(int color) {
+        paint.setColor(color);
+        invalidate();
+    }
+
+    // Drops the paragraph layouts if width differs from the one they were made
+    // for, and estimates every paragraph's height again.
+    private void setLayoutWidth(int width) {
+        width = Math.max(width, 1);
+        if (width == layoutWidth)
+            return;
+        layoutWidth = width;
+        int charsPerLine = Math.max(1, (int) (width / charWidth));
+        for (int i = 0; i < count; i++) {
+            layouts[i] = null;
+            int lines = Math.max(1, (ends[i] - starts[i] + charsPerLine - 1) / charsPerLine);
+            heights[i] = lines * lineHeight;
+        }
+        topsValid = false;
+    }
+
+    private void updateTops() {
+        if (topsValid)
+            return;
+        int top = 0;
+        for (int i = 0; i < count; i++) {
+            tops[i] = top;
+            top += heights[i];
+        }
+        tops[count] = top;
+        topsValid = true;
+    }
+
+    private int getContentHeight() {
+        updateTops();
+        return tops[count];
+    }
+
+    private int getVisibleHeight() {
+        return getHeight() - getPaddingTop() - getPaddingBottom();
+    }
+
+    private int getMaxScroll() {
+        return Math.max(0, getContentHeight() - getVisibleHeight());
+    }
+
+    // The paragraph that contains content offset y.
+    private int findParagraph(int y) {
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (tops[mid] <= y)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+        return low;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = MeasureSpec.getSize(widthMeasureSpec);
+        if (MeasureSpec.getMode(widthMeasureSpec) == MeasureSpec.UNSPECIFIED || width == 0)
+            width = getResources().getDisplayMetrics().widthPixels;
+        setLayoutWidth(width - getPaddingLeft() - getPaddingRight());
+        int height = getContentHeight() + getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension(width, resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        setLayoutWidth(w - getPaddingLeft() - getPaddingRight());
+        scrollTo(0, Math.min(getScrollY(), getMaxScroll()));
+    }
+
+    // Lays out the paragraphs in view that haven't been yet. Called before each
+    // draw, with the scroll position the draw will use.
+    private void layoutVisible() {
+        if (count == 0 || layoutWidth < 0)
+            return;
+        int oldHeight = getContentHeight();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            updateTops();
+            int top = getScrollY();
+            int bottom = top + getVisibleHeight();
+            int shift = 0;
+            for (int i = findParagraph(top); i < count && tops[i] < bottom; i++) {
+                if (layouts[i] != null)
+                    continue;
+                layouts[i] = new StaticLayout(text, starts[i], ends[i], paint, layoutWidth,
+                        Layout.Alignment.ALIGN_NORMAL, spacingMult, spacingAdd, false);
+                int height = layouts[i].getHeight();
+                if (height != heights[i]) {
+                    if (tops[i] < top)
+                        shift += height - heights[i];
+                    heights[i] = height;
+                    topsValid = false;
+                    changed = true;
+                }
+            }
+            if (shift != 0)
+                scrollTo(0, Math.max(0, Math.min(getScrollY() + shift, getMaxScroll())));
+        }
+        int height = getContentHeight();
+        int visibleHeight = getVisibleHeight();
+        // Only a view that shows all of its text changes size with it.
+        if (height != oldHeight && (height < visibleHeight || oldHeight < visibleHeight))
+            requestLayout();
+    }
+
+    @Override
+    public void computeScroll() {
+        if (scroller.computeScrollOffset()) {
+            scrollTo(0, Math.max(0, Math.min(scroller.getCurrY(), getMaxScroll())));
+            invalidate();
+        }
+        layoutVisible();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (count == 0)
+            return;
+        updateTops();
+        int top = getScrollY();
+        int bottom = top + getVisibleHeight();
+        int left = getPaddingLeft();
+        canvas.save();
+        canvas.clipRect(left, top + getPaddingTop(), getWidth() - getPaddingRight(), bottom + getPaddingTop());
+        for (int i = findParagraph(top); i < count && tops[i] < bottom; i++) {
+            if (layouts[i] == null)
+                continue;
+            canvas.save();
+            canvas.translate(left, getPaddingTop() + tops[i]);
+            layouts[i].draw(canvas);
+            canvas.restore();
+        }
+        canvas.restore();
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (getMaxScroll() == 0)
+            return super.onTouchEvent(event);
+        if (velocityTracker == null)
+            velocityTracker = VelocityTracker.obtain();
+        velocityTracker.addMovement(event);
+        float y = event.getY();
+        switch (event.getAction() & MotionEvent.ACTION_MASK) {
+            case MotionEvent.ACTION_DOWN:
+                scroller.forceFinished(true);
+                downY = lastY = y;
+                dragging = false;
+                break;
+            case MotionEvent.ACTION_MOVE:
+                if (!dragging && Math.abs(y - downY) > touchSlop) {
+                    dragging = true;
+                    lastY = y;
+                    ViewParent parent = getParent();
+                    if (parent != null)
+                        parent.requestDisallowInterceptTouchEvent(true);
+                }
+                if (dragging) {
+                    scrollTo(0, Math.max(0, Math.min(getScrollY() + Math.round(lastY - y), getMaxScroll())));
+                    lastY = y;
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+                if (dragging) {
+                    velocityTracker.computeCurrentVelocity(1000, maxFlingVelocity);
+                    int velocity = (int) velocityTracker.getYVelocity();
+                    if (Math.abs(velocity) > minFlingVelocity) {
+                        scroller.fling(0, getScrollY(), 0, -velocity, 0, 0, 0, getMaxScroll());
+                        invalidate();
+                    }
+                }
+                // Fall through.
+            case MotionEvent.ACTION_CANCEL:
+                dragging = false;
+                velocityTracker.recycle();
+                velocityTracker = null;
+                break;
+        }
+        return true;
+    }
+
+    @Override
+    protected int computeVerticalScrollRange() {
+        return getContentHeight() + getPaddingTop() + getPaddingBottom();
+    }
+
+    @Override
+    protected int computeVerticalScrollOffset() {
+        return getScrollY();
+    }
+
+    @Override
+    protected int computeVerticalScrollExtent() {
+        return getHeight();
+    }
+
+    // The text is drawn straight from its layouts, so accessibility services
+    // get it from here, as they would from a TextView.
+    @Override
+    public boolean dispatchPopulateAccessibilityEvent(AccessibilityEvent event) {
+        // From API 14 the superclass calls onPopulateAccessibilityEvent().
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+            return super.dispatchPopulateAccessibilityEvent(event);
+        if (getContentDescription() == null && text.length() > 0)
+            event.getText().add(text);
+        return false;
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    @Override
+    public void onPopulateAccessibilityEvent(AccessibilityEvent event) {
+        super.onPopulateAccessibilityEvent(event);
+        if (getContentDescription() == null && text.length() > 0)
+            event.getText().add(text);
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    @Override
+    public void onInitializeAccessibilityNodeInfo(AccessibilityNodeInfo info) {
+        super.onInitializeAccessibilityNodeInfo(info);
+        info.setText(text);
+        info.setScrollable(getMaxScroll() > 0);
+    }
+
+    private static final void Logv(String text, Object... args) {
+        if (debug) {
+            if (args != null && args.length > 0)
+                text = String.format(text, args);
+            Log.v(TAG, text);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ Copyright 2013 Andrew Mahone
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package us.looking_glass.spotlight.draw;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+// Stand-in for the View drawing cache on pre-Honeycomb devices, drawing into a
+// bitmap borrowed from BitmapPool. The owning view wraps super.draw() in
+// begin()/end(), calls invalidate() whenever its content changes, and release()
+// when it goes away so the bitmap returns to the pool. It passes the alpha of a
+// fade to setAlpha() from onSetAlpha(), so the parent needn't draw the view
+// through a layer of its own.
+public class PooledDrawingCache {
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private Bitmap bitmap = null;
+    private Canvas canvas = null;
+    private boolean valid = false;
+
+    public boolean isValid(int width, int height) {
+        return valid && bitmap != null && bitmap.getWidth() == width && bitmap.getHeight() == height;
+    }
+
+    public void invalidate() {
+        valid = false;
+    }
+
+    public Canvas begin(int width, int height) {
+        if (bitmap != null && (bitmap.getWidth() != width || bitmap.getHeight() != height))
+            release();
+        if (bitmap == null) {
+            bitmap = BitmapPool.getInstance().get(width, height);
+            canvas = new Canvas(bitmap);
+        }
+        bitmap.eraseColor(0);
+        return canvas;
+    }
+
+    public void end() {
+        valid = true;
+    }
+
+    public void draw(Canvas target) {
+        if (bitmap != null)
+            target.drawBitmap(bitmap, 0, 0, paint);
+    }
+
+    // Alpha the bitmap is drawn with, for the owner's onSetAlpha().
+    public void setAlpha(int alpha) {
+        paint.setAlpha(alpha);
+    }
+
+    public int getMemoryBytes() {
+        return bitmap == null ? 0 : bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    public void release() {
+        valid = false;
+        if (bitmap == null)
+            return;
+        canvas = null;
+        BitmapPool.getInstance().put(bitmap);
+        bitmap = null;
+    }
+}
@@ -21,11 +21,13 @@ import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
+import android.graphics.RectF;
 import android.util.AttributeSet;
 
 public class RingSpotlight extends Spotlight {
     private Paint clearPaint;
     private Paint drawPaint;
+    private final RectF bounds = new RectF();
 
     public RingSpotlight(Context context) {
         super(context);
@@ -69,10 +71,24 @@ public class RingSpotlight extends Spotlight {
     protected void onDraw(Canvas canvas) {
         if (getRadius() == 0)
             return;
-        int centerX = getOuterRadius();
-        int centerY = getOuterRadius();
-        canvas.drawCircle(centerX, centerY, getRadius(), drawPaint);
-        canvas.drawCircle(centerX, centerY, getRadius(), clearPaint);
+        int centerX = getOuterHalfWidth();
+        int centerY = getOuterHalfHeight();
+        switch (getShape()) {
+            case CIRCLE:
+                canvas.drawCircle(centerX, centerY, getRadius(), drawPaint);
+                canvas.drawCircle(centerX, centerY, getRadius(), clearPaint);
+                break;
+            case OVAL:
+                bounds.set(centerX - getHalfWidth(), centerY - getHalfHeight(), centerX + getHalfWidth(), centerY + getHalfHeight());
+                canvas.drawOval(bounds, drawPaint);
+                canvas.drawOval(bounds, clearPaint);
+                break;
+            case ROUNDED_RECT:
+                bounds.set(centerX - getHalfWidth(), centerY - getHalfHeight(), centerX + getHalfWidth(), centerY + getHalfHeight());
+                canvas.drawRoundRect(bounds, getCornerRadius(), getCornerRadius(), drawPaint);
+                canvas.drawRoundRect(bounds, getCornerRadius(), getCornerRadius(), clearPaint);
+                break;
+        }
     }
 
     protected int getDefaultColor() {
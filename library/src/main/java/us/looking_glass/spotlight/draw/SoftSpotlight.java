@@ -0,0 +1,243 @@
+/**
+ Copyright 2013 Andrew Mahone
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package us.looking_glass.spotlight.draw;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Shader;
+import android.util.AttributeSet;
+
+import us.looking_glass.spotlight.R;
+
+// Feathered spotlight. The falloff is rasterized once into two small textures
+// (the hole cut out of the stage, and the colored glow around its edge) which
+// are scaled to the current radius by the shader matrix, so changing the radius
+// never rasterizes a path. The feather is a fraction of the radius, which keeps
+// the falloff shape independent of size; the textures are only rebuilt when the
+// color or feather changes. OVAL scales the texture per axis. ROUNDED_RECT
+// draws the texture's quadrants at the corners, at the corner radius, and
+// stretches its middle row and column along the straight edges between them,
+// so there the feather is a fraction of the corner radius.
+public class SoftSpotlight extends Spotlight {
+    private static final int TEXTURE_SIZE = 64;
+    private float feather;
+    private Bitmap clearTexture = null;
+    private Bitmap glowTexture = null;
+    private final Paint clearPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Paint glowPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Matrix shaderMatrix = new Matrix();
+    private final Paint sliceClearPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Paint sliceGlowPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final int[] sliceSource = new int[4];
+    private final float[] sliceX = new float[4];
+    private final float[] sliceY = new float[4];
+    private final Rect sliceSrc = new Rect();
+    private final RectF sliceDst = new RectF();
+
+    public SoftSpotlight(Context context) {
+        super(context);
+        feather = getDefaultFeather();
+        initPaints();
+    }
+
+    public SoftSpotlight(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        initFromAttributes(context, attrs);
+        initPaints();
+    }
+
+    public SoftSpotlight(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        initFromAttributes(context, attrs);
+        initPaints();
+    }
+
+    private void initFromAttributes(Context context, AttributeSet attrs) {
+        TypedArray styled = context.obtainStyledAttributes(attrs, R.styleable.Spotlight);
+        feather = styled.getFloat(R.styleable.Spotlight_spotlightFeather, getDefaultFeather());
+        styled.recycle();
+    }
+
+    private void initPaints() {
+        clearPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.DST_OUT));
+        sliceClearPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.DST_OUT));
+    }
+
+    public float getFeather() {
+        return feather;
+    }
+
+    public void setFeather(float feather) {
+        if (feather == this.feather)
+            return;
+        this.feather = feather;
+        releaseTextures();
+        invalidate();
+    }
+
+    @Override
+    public void setColor(int color) {
+        if (color == getColor())
+            return;
+        releaseTextures();
+        super.setColor(color);
+    }
+
+    @Override
+    protected int getOuterExtent(float extent) {
+        return (int) Math.ceil(extent * (1 + feather));
+    }
+
+    private void releaseTextures() {
+        clearPaint.setShader(null);
+        glowPaint.setShader(null);
+        if (clearTexture != null)
+            clearTexture.recycle();
+        if (glowTexture != null)
+            glowTexture.recycle();
+        clearTexture = null;
+        glowTexture = null;
+    }
+
+    private void buildTextures() {
+        int size = TEXTURE_SIZE;
+        int[] clearPixels = new int[size * size];
+        int[] glowPixels = new int[size * size];
+        float half = size / 2f;
+        // Texture coordinates are in units of the outer radius, radius * (1 + feather).
+        float edge = 1 / (1 + feather);
+        float width = feather / (1 + feather);
+        float clearStart = edge - width;
+        int color = getColor();
+        int colorAlpha = Color.alpha(color);
+        int rgb = color & 0xffffff;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                float dx = (x + 0.5f - half) / half;
+                float dy = (y + 0.5f - half) / half;
+                float t = (float) Math.sqrt(dx * dx + dy * dy);
+                float clear = 1 - smoothStep(clearStart, 1, t);
+                float glow = width > 0 ? Math.max(0, 1 - Math.abs(t - edge) / width) : 0;
+                clearPixels[y * size + x] = Math.round(clear * 255) << 24 | 0xffffff;
+                glowPixels[y * size + x] = Math.round(glow * glow * colorAlpha) << 24 | rgb;
+            }
+        }
+        clearTexture = Bitmap.createBitmap(clearPixels, size, size, Bitmap.Config.ARGB_8888);
+        glowTexture = Bitmap.createBitmap(glowPixels, size, size, Bitmap.Config.ARGB_8888);
+        clearPaint.setShader(new BitmapShader(clearTexture, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP));
+        glowPaint.setShader(new BitmapShader(glowTexture, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP));
+    }
+
+    private static float smoothStep(float edge0, float edge1, float x) {
+        if (edge1 <= edge0)
+            return x < edge0 ? 0 : 1;
+        float t = Math.min(1, Math.max(0, (x - edge0) / (edge1 - edge0)));
+        return t * t * (3 - 2 * t);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (getRadius() == 0)
+            return;
+        if (clearTexture == null)
+            buildTextures();
+        if (getShape() == ROUNDED_RECT) {
+            drawRoundedRect(canvas);
+            return;
+        }
+        float outerHalfWidth = getHalfWidth() * (1 + feather);
+        float outerHalfHeight = getHalfHeight() * (1 + feather);
+        float left = getOuterHalfWidth() - outerHalfWidth;
+        float top = getOuterHalfHeight() - outerHalfHeight;
+        shaderMatrix.setScale(outerHalfWidth * 2 / TEXTURE_SIZE, outerHalfHeight * 2 / TEXTURE_SIZE);
+        shaderMatrix.postTranslate(left, top);
+        clearPaint.getShader().setLocalMatrix(shaderMatrix);
+        glowPaint.getShader().setLocalMatrix(shaderMatrix);
+        float right = left + outerHalfWidth * 2;
+        float bottom = top + outerHalfHeight * 2;
+        canvas.drawRect(left, top, right, bottom, clearPaint);
+        canvas.drawRect(left, top, right, bottom, glowPaint);
+    }
+
+    // Nine slices of the textures: quadrants at the corners, the middle column
+    // and row along the edges, and the fully cleared center inside.
+    private void drawRoundedRect(Canvas canvas) {
+        float halfWidth = getHalfWidth();
+        float halfHeight = getHalfHeight();
+        float corner = Math.min(getCornerRadius(), Math.min(halfWidth, halfHeight));
+        // A square corner would have no room for the falloff.
+        corner = Math.max(corner, Math.min(1, Math.min(halfWidth, halfHeight)));
+        float outerCorner = corner * (1 + feather);
+        float centerX = getOuterHalfWidth();
+        float centerY = getOuterHalfHeight();
+        int half = TEXTURE_SIZE / 2;
+        sliceSource[0] = 0;
+        sliceSource[1] = half;
+        sliceSource[2] = half + 1;
+        sliceSource[3] = TEXTURE_SIZE;
+        sliceX[1] = centerX - halfWidth + corner;
+        sliceX[2] = centerX + halfWidth - corner;
+        sliceX[0] = sliceX[1] - outerCorner;
+        sliceX[3] = sliceX[2] + outerCorner;
+        sliceY[1] = centerY - halfHeight + corner;
+        sliceY[2] = centerY + halfHeight - corner;
+        sliceY[0] = sliceY[1] - outerCorner;
+        sliceY[3] = sliceY[2] + outerCorner;
+        for (int row = 0; row < 3; row++) {
+            for (int column = 0; column < 3; column++) {
+                sliceDst.set(sliceX[column], sliceY[row], sliceX[column + 1], sliceY[row + 1]);
+                if (sliceDst.isEmpty())
+                    continue;
+                // The far quadrants start at the texture's center, as the near
+                // ones end there, so every corner is centered on it.
+                sliceSrc.set(column == 2 ? half : sliceSource[column], row == 2 ? half : sliceSource[row],
+                        sliceSource[column + 1], sliceSource[row + 1]);
+                canvas.drawBitmap(clearTexture, sliceSrc, sliceDst, sliceClearPaint);
+                if (row != 1 || column != 1)
+                    canvas.drawBitmap(glowTexture, sliceSrc, sliceDst, sliceGlowPaint);
+            }
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        releaseTextures();
+    }
+
+    protected float getDefaultFeather() {
+        return 0.25f;
+    }
+
+    protected int getDefaultColor() {
+        return 0xff33b5e5;
+    }
+
+    protected int getDefaultBorderWidth() {
+        return 0;
+    }
+}
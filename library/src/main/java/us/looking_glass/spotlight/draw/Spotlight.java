@@ -22,20 +22,40 @@ import android.graphics.Point;
 import android.util.AttributeSet;
 import android.view.View;
 
+import com.nineoldandroids.animation.ObjectAnimator;
+import com.nineoldandroids.animation.PropertyValuesHolder;
+import com.nineoldandroids.animation.ValueAnimator;
+import com.nineoldandroids.view.ViewHelper;
+import com.nineoldandroids.view.animation.AnimatorProxy;
+
 import us.looking_glass.spotlight.R;
 import us.looking_glass.spotlight.Stage;
 import us.looking_glass.spotlight.actor.Actor;
 
 public abstract class Spotlight extends View {
+    public static final int CIRCLE = 0;
+    public static final int OVAL = 1;
+    public static final int ROUNDED_RECT = 2;
+    // Times the pulse grows and shrinks before it settles at its resting size.
+    public static final int PULSE_CYCLES = 3;
+
     private int color;
     private float border;
     private float radius = 0;
+    private float halfWidth = 0;
+    private float halfHeight = 0;
+    private float cornerRadius;
+    private int shape = CIRCLE;
+    private float pulseScale = 0;
+    private int pulseDuration = 1000;
+    private ObjectAnimator pulse = null;
 
     public Spotlight(Context context) {
         super(context);
         float metric = context.getResources().getDisplayMetrics().density;
         color = getDefaultColor();
         border = metric * getDefaultBorderWidth();
+        cornerRadius = metric * getDefaultCornerRadius();
     }
 
     public Spotlight(Context context, AttributeSet attrs) {
@@ -53,6 +73,8 @@ public abstract class Spotlight extends View {
         TypedArray styled = context.obtainStyledAttributes(attrs, R.styleable.Spotlight);
         color = styled.getColor(R.styleable.Spotlight_spotlightColor, getDefaultColor());
         border = styled.getDimension(R.styleable.Spotlight_spotlightBorderWidth, metric * getDefaultBorderWidth());
+        cornerRadius = styled.getDimension(R.styleable.Spotlight_spotlightCornerRadius, metric * getDefaultCornerRadius());
+        pulseScale = styled.getFloat(R.styleable.Spotlight_spotlightPulseScale, 0);
         styled.recycle();
     }
 
@@ -61,23 +83,74 @@ public abstract class Spotlight extends View {
     }
 
     public void setRadius(float radius) {
-        this.radius = radius;
+        setExtent(radius, radius);
+    }
+
+    public float getHalfWidth() {
+        return halfWidth;
+    }
+
+    public float getHalfHeight() {
+        return halfHeight;
+    }
+
+    // Sizes a non-circular spotlight; for CIRCLE, setRadius() is equivalent.
+    public void setExtent(float halfWidth, float halfHeight) {
+        if (halfWidth == this.halfWidth && halfHeight == this.halfHeight)
+            return;
+        this.halfWidth = halfWidth;
+        this.halfHeight = halfHeight;
+        radius = Math.max(halfWidth, halfHeight);
+        invalidate();
+    }
+
+    public int getShape() {
+        return shape;
+    }
+
+    public void setShape(int shape) {
+        if (shape == this.shape)
+            return;
+        this.shape = shape;
+        invalidate();
+    }
+
+    public float getCornerRadius() {
+        return cornerRadius;
+    }
+
+    public void setCornerRadius(float cornerRadius) {
+        this.cornerRadius = cornerRadius;
+        invalidate();
+    }
+
+    protected int getOuterExtent(float extent) {
+        return (int) Math.ceil(extent + border);
     }
 
     public int getOuterRadius() {
-        return (int) Math.ceil(getRadius() + border);
+        return getOuterExtent(getRadius());
     }
 
     public int getOuterDiameter() {
         return getOuterRadius() << 1;
     }
 
+    public int getOuterHalfWidth() {
+        return getOuterExtent(halfWidth);
+    }
+
+    public int getOuterHalfHeight() {
+        return getOuterExtent(halfHeight);
+    }
+
     public float getBorder() {
         return border;
     }
 
     public void setBorder(float border) {
         this.border = border;
+        invalidate();
     }
 
     public int getColor() {
@@ -86,14 +159,88 @@ public abstract class Spotlight extends View {
 
     public void setColor(int color) {
         this.color = color;
+        invalidate();
+    }
+
+    public float getPulseScale() {
+        return pulseScale;
+    }
+
+    // Amount the spotlight grows at the peak of its pulse, e.g. 0.1 for 10%; 0 disables pulsing.
+    public void setPulseScale(float pulseScale) {
+        if (pulseScale == this.pulseScale)
+            return;
+        boolean running = isPulsing();
+        stopPulse();
+        pulse = null;
+        this.pulseScale = pulseScale;
+        if (running)
+            startPulse();
+    }
+
+    public int getPulseDuration() {
+        return pulseDuration;
+    }
+
+    public void setPulseDuration(int milliseconds) {
+        pulseDuration = milliseconds;
+        if (pulse != null)
+            pulse.setDuration(milliseconds);
+    }
+
+    public boolean isPulsing() {
+        return pulse != null && pulse.isRunning();
+    }
+
+    // The pulse animates only the view's scale, which is applied at draw time as a
+    // display list property: it never measures or lays out the spotlight or the
+    // stage, and does not re-run onDraw on hardware-accelerated devices. Alpha is
+    // left alone, since a translucent view is drawn into its own offscreen layer
+    // and the hole it cuts would no longer reach the stage.
+    public void startPulse() {
+        if (pulseScale == 0 || isPulsing())
+            return;
+        if (pulse == null) {
+            float peak = 1 + pulseScale;
+            pulse = ObjectAnimator.ofPropertyValuesHolder(AnimatorProxy.NEEDS_PROXY ? AnimatorProxy.wrap(this) : this,
+                    PropertyValuesHolder.ofFloat("scaleX", 1, peak),
+                    PropertyValuesHolder.ofFloat("scaleY", 1, peak));
+            // Each repeat runs one way, so an odd count ends back at rest.
+            pulse.setRepeatCount(PULSE_CYCLES * 2 - 1);
+            pulse.setRepeatMode(ValueAnimator.REVERSE);
+            pulse.setDuration(pulseDuration);
+        }
+        pulse.start();
+    }
+
+    public void stopPulse() {
+        if (!isPulsing())
+            return;
+        pulse.cancel();
+        ViewHelper.setScaleX(this, 1);
+        ViewHelper.setScaleY(this, 1);
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        // Nobody would see the rest of the pulse.
+        if (visibility != VISIBLE)
+            stopPulse();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        stopPulse();
+        super.onDetachedFromWindow();
     }
 
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         int width = 0;
         int height = 0;
-        width = getOuterDiameter();
-        height = getOuterDiameter();
+        width = getOuterHalfWidth() << 1;
+        height = getOuterHalfHeight() << 1;
         width = resolveSize(width, widthMeasureSpec);
         height = resolveSize(height, heightMeasureSpec);
         setMeasuredDimension(width, height);
@@ -102,4 +249,8 @@ public abstract class Spotlight extends View {
     protected abstract int getDefaultColor();
 
     protected abstract int getDefaultBorderWidth();
+
+    protected int getDefaultCornerRadius() {
+        return 8;
+    }
 }
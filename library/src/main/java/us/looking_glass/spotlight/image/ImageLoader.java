@@ -0,0 +1,235 @@
+/**
+ Copyright 2013 Andrew Mahone
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package us.looking_glass.spotlight.image;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.widget.ImageView;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import us.looking_glass.spotlight.R;
+
+// Decodes scene images on a background thread, downsampled to the size they
+// will be shown at, into an LRU cache shared by every Script in the process.
+// Resources are decoded unscaled and then subsampled by a power of two, so the
+// result is never smaller than the requested size and at most twice as large;
+// the ImageView scales the rest.
+public final class ImageLoader {
+    private final static String TAG = ImageLoader.class.getSimpleName();
+    final static boolean debug = false;
+    private static ImageLoader instance = null;
+
+    private final int maxBytes;
+    private int sizeBytes = 0;
+    private final LinkedHashMap<String, Bitmap> cache = new LinkedHashMap<String, Bitmap>(16, 0.75f, true);
+    private final Map<String, List<WeakReference<ImageView>>> pending = new HashMap<String, List<WeakReference<ImageView>>>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private Handler handler = null;
+
+    public static ImageLoader getInstance() {
+        if (instance == null)
+            instance = new ImageLoader();
+        return instance;
+    }
+
+    private ImageLoader() {
+        maxBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 16, Integer.MAX_VALUE);
+    }
+
+    private static String key(int resID, int width, int height) {
+        return String.format("%d:%dx%d", resID, width, height);
+    }
+
+    // Shows the image in view, decoding it first if it is not cached. Until the
+    // decode finishes the view shows nothing; if view is bound to another image
+    // in the meantime, the result only goes to the cache.
+    public void bind(ImageView view, int resID, int width, int height) {
+        String key = key(resID, width, height);
+        view.setTag(R.id.spotlightImage, key);
+        Bitmap bitmap = get(key);
+        if (bitmap != null) {
+            view.setImageBitmap(bitmap);
+            return;
+        }
+        view.setImageDrawable(null);
+        load(view.getContext(), key, resID, width, height, view);
+    }
+
+    public void unbind(ImageView view) {
+        view.setTag(R.id.spotlightImage, null);
+        view.setImageDrawable(null);
+    }
+
+    // Decodes the image into the cache, so a later bind() shows it at once.
+    public void prefetch(Context context, int resID, int width, int height) {
+        String key = key(resID, width, height);
+        if (get(key) == null)
+            load(context, key, resID, width, height, null);
+    }
+
+    private void load(Context context, final String key, final int resID, final int width, final int height, ImageView view) {
+        boolean start;
+        synchronized (this) {
+            List<WeakReference<ImageView>> waiting = pending.get(key);
+            start = waiting == null;
+            if (start) {
+                waiting = new ArrayList<WeakReference<ImageView>>(1);
+                pending.put(key, waiting);
+            }
+            if (view != null)
+                waiting.add(new WeakReference<ImageView>(view));
+        }
+        if (!start)
+            return;
+        final Resources resources = context.getApplicationContext().getResources();
+        getHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap bitmap = decode(resources, resID, width, height);
+                if (bitmap != null)
+                    put(key, bitmap);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        deliver(key, bitmap);
+                    }
+                });
+            }
+        });
+    }
+
+    private void deliver(String key, Bitmap bitmap) {
+        List<WeakReference<ImageView>> waiting;
+        synchronized (this) {
+            waiting = pending.remove(key);
+        }
+        if (bitmap == null || waiting == null)
+            return;
+        for (WeakReference<ImageView> viewRef : waiting) {
+            ImageView view = viewRef.get();
+            if (view != null && key.equals(view.getTag(R.id.spotlightImage)))
+                view.setImageBitmap(bitmap);
+        }
+    }
+
+    private synchronized Bitmap get(String key) {
+        return cache.get(key);
+    }
+
+    private synchronized void put(String key, Bitmap bitmap) {
+        Bitmap prev = cache.put(key, bitmap);
+        if (prev != null)
+            sizeBytes -= getBytes(prev);
+        sizeBytes += getBytes(bitmap);
+        // Evicted bitmaps may still be on screen, so they are left to the GC.
+        Iterator<Map.Entry<String, Bitmap>> iterator = cache.entrySet().iterator();
+        while (sizeBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Bitmap> entry = iterator.next();
+            if (entry.getValue() == bitmap)
+                continue;
+            Logv("evict %s", entry.getKey());
+            sizeBytes -= getBytes(entry.getValue());
+            iterator.remove();
+        }
+    }
+
+    private static int getBytes(Bitmap bitmap) {
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    public synchronized int getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public synchronized void clear() {
+        Logv("clear %d images", cache.size());
+        cache.clear();
+        sizeBytes = 0;
+    }
+
+    private static Bitmap decode(Resources resources, int resID, int width, int height) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decodeResource(resources, resID, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0)
+            return null;
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= width && options.outHeight / (sampleSize * 2) >= height)
+            sampleSize *= 2;
+        Logv("decode %d: %dx%d / %d for %dx%d", resID, options.outWidth, options.outHeight, sampleSize, width, height);
+        options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        options.inScaled = false;
+        try {
+            return decodeResource(resources, resID, options);
+        } catch (OutOfMemoryError e) {
+            Log.w(TAG, String.format("out of memory decoding image %d", resID));
+            return null;
+        }
+    }
+
+    private static Bitmap decodeResource(Resources resources, int resID, BitmapFactory.Options options) {
+        InputStream in = null;
+        try {
+            in = resources.openRawResource(resID);
+            return BitmapFactory.decodeStream(in, null, options);
+        } catch (Resources.NotFoundException e) {
+            Log.w(TAG, String.format("image %d not found", resID));
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
+    private synchronized Handler getHandler() {
+        if (handler == null) {
+            HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            handler = new Handler(thread.getLooper());
+        }
+        return handler;
+    }
+
+    private static final void Logv(String text, Object... args) {
+        if (debug) {
+            if (args != null && args.length > 0)
+                text = String.format(text, args);
+            Log.v(TAG, text);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ Copyright 2013 Andrew Mahone
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package us.looking_glass.spotlight.transition;
+
+import android.view.View;
+
+import com.nineoldandroids.animation.PropertyValuesHolder;
+
+// Runs a PropertyTransition on nineoldandroids animators, which tick on the UI thread.
+class AnimatorRunner extends AnimatorTransition {
+    private final PropertyTransition owner;
+    private final float[] from = new float[PropertyTransition.PROPERTY_COUNT];
+    private final float[] to = new float[PropertyTransition.PROPERTY_COUNT];
+
+    AnimatorRunner(PropertyTransition owner) {
+        this.owner = owner;
+    }
+
+    @Override
+    protected PropertyValuesHolder[] createValues(boolean entering) {
+        return new PropertyValuesHolder[] {
+                PropertyValuesHolder.ofFloat("alpha", 1, 1),
+                PropertyValuesHolder.ofFloat("translationX", 0, 0),
+                PropertyValuesHolder.ofFloat("scaleX", 1, 1),
+                PropertyValuesHolder.ofFloat("scaleY", 1, 1)
+        };
+    }
+
+    @Override
+    protected void setupValues(PropertyValuesHolder[] values, View view, View other, boolean entering) {
+        owner.setupStates(view, other, entering, from, to);
+        values[0].setFloatValues(from[PropertyTransition.ALPHA], to[PropertyTransition.ALPHA]);
+        values[1].setFloatValues(from[PropertyTransition.TRANSLATION_X], to[PropertyTransition.TRANSLATION_X]);
+        values[2].setFloatValues(from[PropertyTransition.SCALE], to[PropertyTransition.SCALE]);
+        values[3].setFloatValues(from[PropertyTransition.SCALE], to[PropertyTransition.SCALE]);
+    }
+}
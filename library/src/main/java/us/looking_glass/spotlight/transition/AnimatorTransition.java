@@ -0,0 +1,124 @@
+/**
+ Copyright 2013 Andrew Mahone
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package us.looking_glass.spotlight.transition;
+
+import android.view.View;
+
+import com.nineoldandroids.animation.Animator;
+import com.nineoldandroids.animation.ObjectAnimator;
+import com.nineoldandroids.animation.PropertyValuesHolder;
+import com.nineoldandroids.view.ViewHelper;
+import com.nineoldandroids.view.animation.AnimatorProxy;
+
+// Base for transitions built from one animator for the outgoing view and one for
+// the incoming view. Both animators and the listener are created once and
+// retargeted on each start().
+public abstract class AnimatorTransition implements Transition, Animator.AnimatorListener {
+    private ObjectAnimator outAnimator = null;
+    private ObjectAnimator inAnimator = null;
+    private Listener listener = null;
+    private View outView = null;
+    private int pending = 0;
+
+    protected abstract PropertyValuesHolder[] createValues(boolean entering);
+
+    // Sets the start and end values of the holders made by createValues() for this run.
+    protected abstract void setupValues(PropertyValuesHolder[] values, View view, View other, boolean entering);
+
+    @Override
+    public void start(View out, View in, int duration, Listener listener) {
+        finish();
+        this.listener = listener;
+        outView = out;
+        if (out != null) {
+            if (outAnimator == null)
+                outAnimator = ObjectAnimator.ofPropertyValuesHolder(null, createValues(false));
+            begin(outAnimator, out, in, false, duration);
+        }
+        if (in != null) {
+            if (inAnimator == null)
+                inAnimator = ObjectAnimator.ofPropertyValuesHolder(null, createValues(true));
+            begin(inAnimator, in, out, true, duration);
+        }
+        if (pending == 0)
+            complete();
+    }
+
+    private void begin(ObjectAnimator animator, View view, View other, boolean entering, int duration) {
+        setupValues(animator.getValues(), view, other, entering);
+        // Animators built from PropertyValuesHolders don't get nineoldandroids'
+        // automatic proxy, so animate the proxy directly before Honeycomb.
+        animator.setTarget(AnimatorProxy.NEEDS_PROXY ? AnimatorProxy.wrap(view) : view);
+        animator.setDuration(duration);
+        animator.removeListener(this);
+        animator.addListener(this);
+        pending++;
+        // With no start delay this applies the start values immediately, so the
+        // incoming view never shows at rest for a frame.
+        animator.start();
+    }
+
+    @Override
+    public void finish() {
+        if (outAnimator != null && outAnimator.isStarted())
+            outAnimator.end();
+        if (inAnimator != null && inAnimator.isStarted())
+            inAnimator.end();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return pending > 0;
+    }
+
+    private void complete() {
+        if (outView != null)
+            reset(outView);
+        outView = null;
+        Listener l = listener;
+        listener = null;
+        if (l != null)
+            l.onTransitionEnd(this);
+    }
+
+    // Restores the properties transitions animate, so the outgoing view can be reused.
+    protected void reset(View view) {
+        ViewHelper.setAlpha(view, 1);
+        ViewHelper.setTranslationX(view, 0);
+        ViewHelper.setScaleX(view, 1);
+        ViewHelper.setScaleY(view, 1);
+    }
+
+    @Override
+    public void onAnimationEnd(Animator animation) {
+        ((ObjectAnimator) animation).setTarget(null);
+        if (pending > 0 && --pending == 0)
+            complete();
+    }
+
+    @Override
+    public void onAnimationCancel(Animator animation) {
+    }
+
+    @Override
+    public void onAnimationStart(Animator animation) {
+    }
+
+    @Override
+    public void onAnimationRepeat(Animator animation) {
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ Copyright 2013 Andrew Mahone
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package us.looking_glass.spotlight.transition;
+
+import android.os.Build;
+import android.view.View;
+
+// Base for transitions that animate only alpha, horizontal translation and
+// scale, described as start and end states. On API 12 and later they run on
+// the platform's ViewPropertyAnimator, which batches the property changes of
+// each frame into one invalidation. Its frames are still driven from the UI
+// thread, as the runner listens for the end and may animate with a layer.
+// BACKEND_COMPAT, and older devices, run them on nineoldandroids animators
+// instead.
+public abstract class PropertyTransition implements Transition {
+    public static final int BACKEND_AUTO = 0;
+    public static final int BACKEND_COMPAT = 1;
+
+    protected static final int ALPHA = 0;
+    protected static final int TRANSLATION_X = 1;
+    protected static final int SCALE = 2;
+    static final int PROPERTY_COUNT = 3;
+
+    private int backend = BACKEND_AUTO;
+    private boolean layersEnabled = true;
+    private Transition runner = null;
+    private Listener listener = null;
+    private final Listener relay = new Listener() {
+        @Override
+        public void onTransitionEnd(Transition transition) {
+            Listener l = listener;
+            listener = null;
+            if (l != null)
+                l.onTransitionEnd(PropertyTransition.this);
+        }
+    };
+
+    // Fills from and to, indexed by ALPHA, TRANSLATION_X and SCALE, with the
+    // states view animates between. other is the view animating the other way,
+    // or null.
+    protected abstract void setupStates(View view, View other, boolean entering, float[] from, float[] to);
+
+    public int getBackend() {
+        return backend;
+    }
+
+    public void setBackend(int backend) {
+        if (backend == this.backend)
+            return;
+        finish();
+        this.backend = backend;
+        runner = null;
+    }
+
+    boolean isLayersEnabled() {
+        return layersEnabled;
+    }
+
+    // Whether views without a layer of their own may be given one for the
+    // run, where the backend supports it. Takes effect from the next start().
+    public void setLayersEnabled(boolean layersEnabled) {
+        this.layersEnabled = layersEnabled;
+    }
+
+    private Transition getRunner() {
+        if (runner == null) {
+            if (backend == BACKEND_AUTO && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR1)
+                runner = new ViewPropertyRunner(this);
+            else
+                runner = new AnimatorRunner(this);
+        }
+        return runner;
+    }
+
+    @Override
+    public void start(View out, View in, int duration, Listener listener) {
+        finish();
+        this.listener = listener;
+        getRunner().start(out, in, duration, relay);
+    }
+
+    @Override
+    public void finish() {
+        if (runner != null)
+            runner.finish();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return runner != null && runner.isRunning();
+    }
+}
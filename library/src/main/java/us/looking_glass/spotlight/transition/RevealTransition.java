@@ -0,0 +1,34 @@
+/**
+ Copyright 2013 Andrew Mahone
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package us.looking_glass.spotlight.transition;
+
+import android.view.View;
+
+// The incoming stage grows into place from its center while fading in; the
+// outgoing one fades out.
+public class RevealTransition extends PropertyTransition {
+    private static final float START_SCALE = 0.8f;
+
+    @Override
+    protected void setupStates(View view, View other, boolean entering, float[] from, float[] to) {
+        from[ALPHA] = entering ? 0 : 1;
+        to[ALPHA] = entering ? 1 : 0;
+        from[SCALE] = entering ? START_SCALE : 1;
+        to[SCALE] = 1;
+        from[TRANSLATION_X] = to[TRANSLATION_X] = 0;
+    }
+}
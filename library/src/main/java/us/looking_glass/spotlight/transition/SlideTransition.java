@@ -0,0 +1,35 @@
+/**
+ Copyright 2013 Andrew Mahone
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package us.looking_glass.spotlight.transition;
+
+import android.view.View;
+
+// The outgoing stage slides off to the left as the incoming one slides in from the right.
+public class SlideTransition extends PropertyTransition {
+    @Override
+    protected void setupStates(View view, View other, boolean entering, float[] from, float[] to) {
+        float width = view.getWidth();
+        if (width == 0 && other != null)
+            width = other.getWidth();
+        if (width == 0)
+            width = view.getResources().getDisplayMetrics().widthPixels;
+        from[TRANSLATION_X] = entering ? width : 0;
+        to[TRANSLATION_X] = entering ? 0 : -width;
+        from[ALPHA] = to[ALPHA] = 1;
+        from[SCALE] = to[SCALE] = 1;
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ Copyright 2013 Andrew Mahone
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package us.looking_glass.spotlight.transition;
+
+import android.view.View;
+
+public interface Transition {
+    interface Listener {
+        void onTransitionEnd(Transition transition);
+    }
+
+    // Animates from out to in. out is null when the first scene appears and in
+    // is null when the last one goes away. Implementations keep their animators
+    // between runs, so a Transition instance is reused for every scene change.
+    void start(View out, View in, int duration, Listener listener);
+
+    // Jumps to the end state of a running transition, calling its listener.
+    void finish();
+
+    boolean isRunning();
+}
@@ -0,0 +1,150 @@
+/**
+ Copyright 2013 Andrew Mahone
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package us.looking_glass.spotlight.transition;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.view.View;
+import android.view.ViewPropertyAnimator;
+
+// Runs a PropertyTransition on the platform ViewPropertyAnimator. Views that
+// have no layer of their own are animated with one on API 16 and later, unless
+// the owner has layers turned off; a stage that already has a layer, such as
+// the blended stages of a crossfade, keeps it, as swapping in a plain layer
+// would lose its transfer mode.
+@TargetApi(Build.VERSION_CODES.HONEYCOMB_MR1)
+class ViewPropertyRunner implements Transition {
+    private final PropertyTransition owner;
+    private final Run outRun = new Run(false);
+    private final Run inRun = new Run(true);
+    private Listener listener = null;
+    private int pending = 0;
+
+    ViewPropertyRunner(PropertyTransition owner) {
+        this.owner = owner;
+    }
+
+    private class Run extends AnimatorListenerAdapter {
+        final boolean entering;
+        final float[] from = new float[PropertyTransition.PROPERTY_COUNT];
+        final float[] to = new float[PropertyTransition.PROPERTY_COUNT];
+        View view = null;
+
+        Run(boolean entering) {
+            this.entering = entering;
+        }
+
+        void start(View view, View other, int duration) {
+            this.view = view;
+            owner.setupStates(view, other, entering, from, to);
+            apply(view, from);
+            ViewPropertyAnimator animator = view.animate();
+            animator.setDuration(duration)
+                    .setListener(this)
+                    .alpha(to[PropertyTransition.ALPHA])
+                    .translationX(to[PropertyTransition.TRANSLATION_X])
+                    .scaleX(to[PropertyTransition.SCALE])
+                    .scaleY(to[PropertyTransition.SCALE]);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN && owner.isLayersEnabled() &&
+                    view.getLayerType() == View.LAYER_TYPE_NONE)
+                withLayer(animator);
+            pending++;
+        }
+
+        // Jumps to the end state. A ViewPropertyAnimator cancelled before its
+        // first frame reports nothing, so this doesn't rely on its callbacks.
+        void finish() {
+            if (view == null)
+                return;
+            View v = view;
+            ViewPropertyAnimator animator = v.animate();
+            animator.setListener(null);
+            animator.cancel();
+            apply(v, to);
+            ended();
+        }
+
+        @Override
+        public void onAnimationEnd(Animator animation) {
+            if (view == null)
+                return;
+            view.animate().setListener(null);
+            ended();
+        }
+
+        private void ended() {
+            View v = view;
+            view = null;
+            if (!entering)
+                reset(v);
+            if (pending > 0 && --pending == 0)
+                complete();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static void withLayer(ViewPropertyAnimator animator) {
+        animator.withLayer();
+    }
+
+    private static void apply(View view, float[] state) {
+        view.setAlpha(state[PropertyTransition.ALPHA]);
+        view.setTranslationX(state[PropertyTransition.TRANSLATION_X]);
+        view.setScaleX(state[PropertyTransition.SCALE]);
+        view.setScaleY(state[PropertyTransition.SCALE]);
+    }
+
+    // Restores the properties transitions animate, so the outgoing view can be reused.
+    private static void reset(View view) {
+        view.setAlpha(1);
+        view.setTranslationX(0);
+        view.setScaleX(1);
+        view.setScaleY(1);
+    }
+
+    @Override
+    public void start(View out, View in, int duration, Listener listener) {
+        finish();
+        this.listener = listener;
+        if (out != null)
+            outRun.start(out, in, duration);
+        if (in != null)
+            inRun.start(in, out, duration);
+        if (pending == 0)
+            complete();
+    }
+
+    @Override
+    public void finish() {
+        outRun.finish();
+        inRun.finish();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return pending > 0;
+    }
+
+    private void complete() {
+        Listener l = listener;
+        listener = null;
+        if (l != null)
+            l.onTransitionEnd(this);
+    }
+}